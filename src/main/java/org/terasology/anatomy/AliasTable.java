@@ -0,0 +1,82 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.utilities.random.Random;
+
+/**
+ * Samples indices from a discrete weighted distribution in constant time, using Vose's alias method.
+ */
+public final class AliasTable {
+    private final float[] probabilities;
+    private final int[] aliases;
+
+    /**
+     * Builds the table for a set of weights. If no weight is positive, all indices are equally likely.
+     *
+     * @param weights The non-negative weight of each index.
+     */
+    public AliasTable(float[] weights) {
+        int size = weights.length;
+        probabilities = new float[size];
+        aliases = new int[size];
+
+        float totalWeight = 0;
+        for (float weight : weights) {
+            totalWeight += Math.max(0, weight);
+        }
+        float[] scaledWeights = new float[size];
+        for (int i = 0; i < size; i++) {
+            scaledWeights[i] = totalWeight > 0 ? Math.max(0, weights[i]) * size / totalWeight : 1f;
+        }
+
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < size; i++) {
+            if (scaledWeights[i] < 1f) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+            probabilities[less] = scaledWeights[less];
+            aliases[less] = more;
+            scaledWeights[more] = scaledWeights[more] + scaledWeights[less] - 1f;
+            if (scaledWeights[more] < 1f) {
+                small[numSmall++] = more;
+            } else {
+                large[numLarge++] = more;
+            }
+        }
+        // Whatever remains is only off from 1 due to rounding errors.
+        while (numLarge > 0) {
+            probabilities[large[--numLarge]] = 1f;
+        }
+        while (numSmall > 0) {
+            probabilities[small[--numSmall]] = 1f;
+        }
+    }
+
+    /**
+     * @return The number of indices in the table.
+     */
+    public int size() {
+        return probabilities.length;
+    }
+
+    /**
+     * Samples an index from the distribution.
+     *
+     * @param random The random number generator to use.
+     * @return The sampled index.
+     */
+    public int sample(Random random) {
+        int column = random.nextInt(probabilities.length);
+        return random.nextFloat() < probabilities[column] ? column : aliases[column];
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.characters.GetMaxSpeedEvent;
+import org.terasology.engine.logic.characters.MovementMode;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.console.commandSystem.annotations.Sender;
+import org.terasology.engine.logic.health.EngineDamageTypes;
+import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.registry.In;
+import org.terasology.module.health.events.OnDamagedEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the throughput of the anatomy pipelines on a copy of the anatomy of the player, so that optimizations can
+ * be compared against a baseline:
+ * <ul>
+ *     <li>damage, from the {@link OnDamagedEvent} through the sub-systems to the batched severity updates</li>
+ *     <li>the max speed hot path of the skeletal effects</li>
+ *     <li>regen passes over the benchmark entity, simulating a second of regeneration each</li>
+ * </ul>
+ * The regen passes run in an {@link AnatomyClock.Simulation}, so the game time of the world is left untouched.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class AnatomyBenchmarkSystem extends BaseComponentSystem {
+    /**
+     * Fraction of the iterations run before measuring, to let the JIT compile the pipelines.
+     */
+    private static final int WARMUP_DIVISOR = 10;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyRegenSystem regenSystem;
+
+    /**
+     * Console command - Benchmarks the anatomy pipelines.
+     */
+    @Command(shortDescription = "Benchmark the anatomy damage, effect and regen pipelines",
+            helpText = "Runs each pipeline for a number of iterations on a copy of your anatomy and shows its throughput. "
+                    + "The regen iterations run in simulated time, without touching the world's anatomy time.")
+    public String benchmarkAnatomy(@Sender EntityRef client, @CommandParam("iterations") int iterations) {
+        EntityRef character = client.getComponent(ClientComponent.class).character;
+        AnatomyComponent anatomyComponent = character.getComponent(AnatomyComponent.class);
+        if (anatomyComponent == null) {
+            return "No anatomy to benchmark.";
+        }
+        AnatomyComponent benchmarkAnatomy = new AnatomyComponent();
+        benchmarkAnatomy.copyFrom(anatomyComponent);
+        EntityRef entity = entityManager.create(benchmarkAnatomy);
+        Prefab damageType = EngineDamageTypes.DIRECT.get();
+        try {
+            String result = "Anatomy benchmark (" + iterations + " iterations):\n";
+            result += measure("Damage", iterations, () -> {
+                entity.send(new OnDamagedEvent(1, 1, damageType, EntityRef.NULL));
+                changeTracker.flush();
+            });
+            result += measure("Max speed", iterations, () -> entity.send(new GetMaxSpeedEvent(1.0f, MovementMode.WALKING)));
+            // Flushed first, so that the pending changes of other entities are handled in the game time of the world.
+            changeTracker.flush();
+            List<EntityRef> regenEntities = Collections.singletonList(entity);
+            try (AnatomyClock.Simulation simulation = clock.startSimulation(clock.getGameTimeInMs())) {
+                result += measure("Regen pass", iterations, () -> {
+                    simulation.advance(1000);
+                    regenSystem.regenerate(regenEntities, simulation.getGameTimeInMs());
+                    changeTracker.flush();
+                });
+            }
+            return result;
+        } finally {
+            entity.destroy();
+        }
+    }
+
+    private String measure(String name, int iterations, Runnable operation) {
+        for (int i = 0; i < iterations / WARMUP_DIVISOR; i++) {
+            operation.run();
+        }
+        AnatomyTimer timer = new AnatomyTimer();
+        timer.time(() -> {
+            for (int i = 0; i < iterations; i++) {
+                operation.run();
+            }
+        });
+        long elapsed = Math.max(1, timer.getTotalTime());
+        return String.format("%s: %d ns/op, %.0f ops/s\n", name, elapsed / Math.max(1, iterations),
+                iterations * 1e9 / elapsed);
+    }
+}
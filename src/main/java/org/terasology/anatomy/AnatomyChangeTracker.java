@@ -0,0 +1,34 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+/**
+ * Coalesces the changes to the injury state of entities, so that all the changes made to an entity during a tick are
+ * notified and written out once at the end of the tick, however many parts or hits they involve.
+ */
+public interface AnatomyChangeTracker {
+    /**
+     * Marks the injury state of an entity as changed, without any particular part. The changes must be made to the
+     * injury components in place.
+     *
+     * @param entityRef The entity whose injury state changed.
+     */
+    void markChanged(EntityRef entityRef);
+
+    /**
+     * Marks a part of a sub-system of an entity as changed. The part is included in the
+     * {@link org.terasology.anatomy.event.AnatomyPartsChangedEvent} sent to the entity at the end of the tick.
+     *
+     * @param entityRef The entity whose part changed.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     */
+    void markPartChanged(EntityRef entityRef, String subsystem, int part);
+
+    /**
+     * Flushes the entities marked as changed so far. This happens automatically at the end of every tick.
+     */
+    void flush();
+}
@@ -4,6 +4,8 @@ package org.terasology.anatomy.AnatomyCirculation;
 
 import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
 import org.terasology.anatomy.AnatomyCirculation.event.BloodLevelChangedEvent;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyTracing;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.prefab.PrefabManager;
@@ -19,11 +21,26 @@ public class CirculatoryEffectsSystem extends BaseComponentSystem {
     @In
     private PrefabManager prefabManager;
 
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyTracing tracing;
+
+    private Prefab bloodLossDamage;
+
+    @Override
+    public void initialise() {
+        bloodLossDamage = prefabManager.getPrefab("Anatomy:bloodLoss");
+    }
+
     @ReceiveEvent
     public void onBloodLevelChanged(BloodLevelChangedEvent event, EntityRef entityRef,
                                     InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        if (injuredCirculatoryComponent.bloodLevel <= 0) {
-            Prefab bloodLossDamage = prefabManager.getPrefab("Anatomy:bloodLoss");
+        if (injuredCirculatoryComponent.getBloodLevel(clock.getGameTimeInMs()) <= 0) {
+            if (tracing.isEnabled()) {
+                tracing.getListener().onBloodLossDeath(entityRef);
+            }
             entityRef.send(new DestroyEvent(EntityRef.NULL, EntityRef.NULL, bloodLossDamage));
         }
     }
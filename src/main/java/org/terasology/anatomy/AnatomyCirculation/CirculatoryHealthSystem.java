@@ -2,142 +2,282 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomyCirculation;
 
+import org.terasology.anatomy.AnatomyChangeTracker;
 import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
 import org.terasology.anatomy.AnatomyCirculation.event.BloodLevelChangedEvent;
 import org.terasology.anatomy.AnatomyCirculation.event.PartCirculatoryEffectChangedEvent;
-import org.terasology.anatomy.AnatomyCirculation.event.PartCirculatoryHealthChangedEvent;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyDamageTypeRegistry;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomyMetrics;
+import org.terasology.anatomy.AnatomySubsystem;
+import org.terasology.anatomy.AnatomySubsystemRegistry;
+import org.terasology.anatomy.AnatomyTracing;
 import org.terasology.anatomy.component.AnatomyComponent;
-import org.terasology.anatomy.component.PartHealthDetails;
-import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
-import org.terasology.engine.core.Time;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
+import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
-import org.terasology.engine.logic.delay.DelayManager;
-import org.terasology.engine.logic.delay.DelayedActionTriggeredEvent;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
-import org.terasology.math.TeraMath;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class CirculatoryHealthSystem extends BaseComponentSystem {
+@Share(CirculatoryHealthSystem.class)
+public class CirculatoryHealthSystem extends BaseComponentSystem implements AnatomySubsystem {
+
+    /**
+     * Name of the sub-system, used to look up its damage multipliers.
+     */
+    public static final String CIRCULATORY_SUBSYSTEM = "Circulatory";
+
+    /**
+     * Slot of the sub-system in the {@link org.terasology.anatomy.component.AnatomySummaryComponent}.
+     */
+    public static final int CIRCULATORY_SUMMARY_SLOT = 1;
 
-    private static final String CIRCULATORY_REGEN_PREFIX = "Circulatory:Regen:";
-    private static final String CIRCULATORY_BLOOD_REGEN_PREFIX = "Circulatory:BloodRegen:";
     private static final String CIRCULATORY_CHARACTERISTIC = "blood";
-    private final Map<Integer, Float> severityBleedingRateMap = new HashMap<>();
-    private final float bluntDamageMultiplier = 0.5f;
-    private final float pierceDamageMultiplier = 1.5f;
+    /**
+     * Change in the blood regen rate caused by a part, indexed by the severity of its bleeding.
+     */
+    private static final float[] SEVERITY_BLEEDING_RATES = {0f, -0.5f, -1.0f, -2.0f};
 
     @In
-    private Time time;
+    private AnatomyClock clock;
     @In
     private EntityManager entityManager;
     @In
-    private DelayManager delayManager;
+    private AnatomyLayoutRegistry layoutRegistry;
+    @In
+    private AnatomyMetrics metrics;
+    @In
+    private AnatomyDamageTypeRegistry damageTypeRegistry;
+    @In
+    private AnatomyChangeTracker changeTracker;
+    @In
+    private AnatomyTracing tracing;
+    @In
+    private AnatomySubsystemRegistry subsystemRegistry;
+
+    /**
+     * The mask of the characteristics of the parts handled by this sub-system.
+     */
+    private long characteristicMask;
 
     @Override
     public void initialise() {
-        severityBleedingRateMap.put(1, -0.5f);
-        severityBleedingRateMap.put(2, -1.0f);
-        severityBleedingRateMap.put(3, -2.0f);
+        damageTypeRegistry.registerDefault("Equipment:pierceDamage", CIRCULATORY_SUBSYSTEM, 1.5f);
+        damageTypeRegistry.registerDefault("Equipment:bluntDamage", CIRCULATORY_SUBSYSTEM, 0.5f);
+        characteristicMask = subsystemRegistry.register(CIRCULATORY_SUBSYSTEM, this, CIRCULATORY_CHARACTERISTIC);
     }
 
-    @ReceiveEvent
-    public void onBloodLevelRegen(DelayedActionTriggeredEvent event, EntityRef entityRef,
-                                  InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        if (event.getActionId().startsWith(CIRCULATORY_BLOOD_REGEN_PREFIX)) {
-            if (injuredCirculatoryComponent.bloodLevel >= 0
-                    && injuredCirculatoryComponent.bloodLevel <= injuredCirculatoryComponent.maxBloodLevel
-                    && injuredCirculatoryComponent.bloodRegenRate != 0) {
-                int healAmount = 0;
-                healAmount += injuredCirculatoryComponent.bloodRegenRate / TeraMath.fastAbs(injuredCirculatoryComponent.bloodRegenRate);
-                injuredCirculatoryComponent.nextRegenTick =
-                        time.getGameTimeInMs() + (long) (1000 / TeraMath.fastAbs(injuredCirculatoryComponent.bloodRegenRate));
-                injuredCirculatoryComponent.bloodLevel += healAmount;
-                injuredCirculatoryComponent.bloodLevel = TeraMath.clamp(injuredCirculatoryComponent.bloodLevel, 0,
-                        injuredCirculatoryComponent.maxBloodLevel);
-                entityRef.saveComponent(injuredCirculatoryComponent);
-                entityRef.send(new BloodLevelChangedEvent());
+    /**
+     * Marks the parts of an entity whose circulatory health has regenerated past a severity threshold as changed, and
+     * notifies whether the blood level has reached zero. Called by the {@link org.terasology.anatomy.AnatomyRegenSystem} once
+     * the {@link InjuredCirculatoryComponent#nextThresholdTime} is reached.
+     *
+     * @param gameTime The current game time in ms.
+     */
+    public void regenerate(EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent, long gameTime) {
+        if (gameTime >= injuredCirculatoryComponent.bloodRecoveryTime) {
+            injuredCirculatoryComponent.bloodRecoveryTime = Long.MAX_VALUE;
+            // Lets the entity be checked for a full recovery.
+            changeTracker.markChanged(entityRef);
+            metrics.count(AnatomyMetrics.Counter.REGEN_ACTIONS);
+        }
+        if (gameTime >= injuredCirculatoryComponent.bloodBucketTime) {
+            injuredCirculatoryComponent.bloodBucketTime = injuredCirculatoryComponent.getNextBloodBucketTime(gameTime);
+            // Lets the summary be updated.
+            changeTracker.markChanged(entityRef);
+            metrics.count(AnatomyMetrics.Counter.REGEN_ACTIONS);
+        }
+        if (gameTime >= injuredCirculatoryComponent.bloodDepletionTime) {
+            injuredCirculatoryComponent.bloodDepletionTime = Long.MAX_VALUE;
+            entityRef.send(new BloodLevelChangedEvent());
+            metrics.count(AnatomyMetrics.Counter.REGEN_ACTIONS);
+        }
+        PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+        long nextThresholdTime = Long.MAX_VALUE;
+        for (int part = 0; part < partHealths.size(); part++) {
+            if (gameTime >= partHealths.nextThresholdTime[part]) {
+                partHealths.nextThresholdTime[part] = partHealths.getNextThresholdTime(part, gameTime, CirculatorySystem.SEVERITY_THRESHOLDS);
+                changeTracker.markPartChanged(entityRef, CIRCULATORY_SUBSYSTEM, part);
+                metrics.count(AnatomyMetrics.Counter.REGEN_ACTIONS);
             }
-            delayManager.addDelayedAction(entityRef, CIRCULATORY_BLOOD_REGEN_PREFIX,
-                    (long) (1000 / TeraMath.fastAbs(injuredCirculatoryComponent.bloodRegenRate)));
+            nextThresholdTime = Math.min(nextThresholdTime, partHealths.nextThresholdTime[part]);
         }
+        injuredCirculatoryComponent.nextThresholdTime = Math.min(nextThresholdTime, injuredCirculatoryComponent.getNextBloodTime());
     }
 
+    /**
+     * Derives the state which isn't persisted when the injured circulatory component is loaded. The parts of the loaded
+     * table are moved to their layout indices, and the blood level of the legacy format resumes from the current time.
+     * As the severities aren't persisted, the blood regen rate is reset to the base rate, the thresholds are scheduled,
+     * and the injured parts are marked as changed so that their severities and bleeding are derived again.
+     */
     @ReceiveEvent
-    public void onPartHealthRegen(DelayedActionTriggeredEvent event, EntityRef entityRef,
-                                  InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        if (event.getActionId().startsWith(CIRCULATORY_REGEN_PREFIX)) {
-            String partID = event.getActionId().substring(CIRCULATORY_REGEN_PREFIX.length());
-            PartHealthDetails partDetails = injuredCirculatoryComponent.partHealths.get(partID);
-            if (partDetails.health >= 0 && partDetails.health != partDetails.maxHealth && partDetails.regenRate != 0) {
-                int healAmount = 0;
-                healAmount = regenerateHealth(partDetails, healAmount);
-                partDetails.health += healAmount;
-                partDetails.health = TeraMath.clamp(partDetails.health, 0, partDetails.maxHealth);
-                entityRef.saveComponent(injuredCirculatoryComponent);
-                entityRef.send(new PartCirculatoryHealthChangedEvent(partID));
-            }
-            delayManager.addDelayedAction(entityRef, CIRCULATORY_REGEN_PREFIX + partID, (long) (1000 / partDetails.regenRate));
+    public void onInjuryActivated(OnActivatedComponent event, EntityRef entityRef,
+                                  InjuredCirculatoryComponent injuredCirculatoryComponent, AnatomyComponent anatomyComponent) {
+        long start = metrics.startTimer();
+        PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        if (partHealths.legacyFormat) {
+            // The legacy blood level isn't anchored, so it is kept as it was saved until now.
+            injuredCirculatoryComponent.bloodAnchorTime = Long.MAX_VALUE;
+            partHealths.legacyFormat = false;
+        }
+        if (partHealths.loadedPartIds != null) {
+            partHealths.remapLoadedParts(layout);
+        } else {
+            partHealths.bindLayout(layout);
         }
+        deriveState(entityRef, injuredCirculatoryComponent);
+        metrics.stopTimer("CirculatoryHealthSystem.onInjuryActivated", start);
     }
 
+    /**
+     * Moves the parts to their indices in the new layout when the anatomy definition of the entity is reloaded, and
+     * derives their state again like for a loaded component. The severities move with the parts, so the bleeding of the
+     * dropped parts is removed from the blood regen rate.
+     */
     @ReceiveEvent
-    public void onBleedingRateChanged(PartCirculatoryEffectChangedEvent event, EntityRef entityRef,
-                                      InjuredCirculatoryComponent injuredCirculatoryComponent) {
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef,
+                                InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
+        injuredCirculatoryComponent.partHealths.remapParts(event.getPreviousLayout(), event.getLayout());
+        deriveState(entityRef, injuredCirculatoryComponent);
+        metrics.stopTimer("CirculatoryHealthSystem.onLayoutChanged", start);
+    }
+
+    /**
+     * Derives the blood regen rate from the severities of the parts, schedules the thresholds of the parts and the blood
+     * level, and marks the injured parts as changed so that their severities and bleeding are derived again.
+     */
+    private void deriveState(EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+        long gameTime = clock.getGameTimeInMs();
         float bloodRegenRate = injuredCirculatoryComponent.baseBloodRegenRate;
-        for (Map.Entry<String, List<String>> severityPartsEntry : injuredCirculatoryComponent.parts.entrySet()) {
-            bloodRegenRate += severityPartsEntry.getValue().size() * severityBleedingRateMap.get(Integer.parseInt(severityPartsEntry.getKey()));
+        for (int part = 0; part < partHealths.size(); part++) {
+            bloodRegenRate += SEVERITY_BLEEDING_RATES[partHealths.severity[part]];
+        }
+        injuredCirculatoryComponent.setBloodRegenRate(bloodRegenRate, gameTime);
+        long nextThresholdTime = partHealths.scheduleThresholds(gameTime, CirculatorySystem.SEVERITY_THRESHOLDS);
+        injuredCirculatoryComponent.nextThresholdTime = Math.min(nextThresholdTime, injuredCirculatoryComponent.getNextBloodTime());
+        for (int part = 0; part < partHealths.size(); part++) {
+            if (partHealths.getHealth(part, gameTime) < partHealths.maxHealth[part]) {
+                changeTracker.markPartChanged(entityRef, CIRCULATORY_SUBSYSTEM, part);
+            }
+        }
+        changeTracker.markChanged(entityRef);
+    }
+
+    /**
+     * Removes the injured circulatory component once all the parts are healed and the blood level is full. Runs after
+     * the effect severities have been updated for the changes.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef,
+                               InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
+        if (injuredCirculatoryComponent.isHealed(clock.getGameTimeInMs())) {
+            entityRef.removeComponent(InjuredCirculatoryComponent.class);
         }
-        injuredCirculatoryComponent.bloodRegenRate = bloodRegenRate;
-        entityRef.saveComponent(injuredCirculatoryComponent);
+        metrics.stopTimer("CirculatoryHealthSystem.onPartsChanged", start);
     }
 
     @ReceiveEvent
-    public void onCirculatoryDamage(AnatomyPartImpactedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
-        if (anatomyComponent.parts.get(event.getTargetPart().id).characteristics.contains(CIRCULATORY_CHARACTERISTIC)) {
-            InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
-            if (injuredCirculatoryComponent == null) {
-                injuredCirculatoryComponent = new InjuredCirculatoryComponent();
-                entityRef.addComponent(injuredCirculatoryComponent);
-            }
-            PartHealthDetails partHealthDetails = injuredCirculatoryComponent.partHealths.get(event.getTargetPart().id);
-            if (partHealthDetails == null) {
-                partHealthDetails = new PartHealthDetails();
-                injuredCirculatoryComponent.partHealths.put(event.getTargetPart().id, partHealthDetails);
-                // Part has been injured for the first time, so add delayed part health regen event and blood level regen event.
-                delayManager.addDelayedAction(entityRef, CIRCULATORY_REGEN_PREFIX + event.getTargetPart().id,
-                        (long) (1000 / partHealthDetails.regenRate));
-                delayManager.addDelayedAction(entityRef, CIRCULATORY_BLOOD_REGEN_PREFIX, 1000);
-            }
-            int damageAmount = event.getAmount();
-            if (event.getDamageType().getName().equals("Equipment:pierceDamage")) {
-                damageAmount *= pierceDamageMultiplier;
-            }
-            if (event.getDamageType().getName().equals("Equipment:bluntDamage")) {
-                damageAmount *= bluntDamageMultiplier;
+    public void onBleedingRateChanged(PartCirculatoryEffectChangedEvent event, EntityRef entityRef,
+                                      InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
+        float bloodRegenRate = injuredCirculatoryComponent.bloodRegenRate
+                + SEVERITY_BLEEDING_RATES[event.severity] - SEVERITY_BLEEDING_RATES[event.previousSeverity];
+        injuredCirculatoryComponent.setBloodRegenRate(bloodRegenRate, clock.getGameTimeInMs());
+        injuredCirculatoryComponent.nextThresholdTime = Math.min(injuredCirculatoryComponent.nextThresholdTime,
+                injuredCirculatoryComponent.getNextBloodTime());
+        changeTracker.markChanged(entityRef);
+        metrics.stopTimer("CirculatoryHealthSystem.onBleedingRateChanged", start);
+    }
+
+    @Override
+    public void onPartImpacted(EntityRef entityRef, AnatomyLayout layout, int part, int amount, Prefab damageType) {
+        long start = metrics.startTimer();
+        InjuredCirculatoryComponent injuredCirculatoryComponent = getInjuredCirculatoryComponent(entityRef, layout);
+        damagePart(entityRef, injuredCirculatoryComponent, part, amount, damageType, clock.getGameTimeInMs());
+        metrics.stopTimer("CirculatoryHealthSystem.onPartImpacted", start);
+    }
+
+    /**
+     * Applies all the hits on an entity from the {@link org.terasology.anatomy.AnatomyDamageManager} in one pass.
+     */
+    @Override
+    public void onPartsImpacted(EntityRef entityRef, AnatomyLayout layout, AnatomyPartsImpactedEvent event) {
+        long start = metrics.startTimer();
+        InjuredCirculatoryComponent injuredCirculatoryComponent = null;
+        long gameTime = clock.getGameTimeInMs();
+        for (int hit = 0; hit < event.size(); hit++) {
+            int part = event.getPart(hit);
+            if (layout.hasCharacteristics(part, characteristicMask)) {
+                if (injuredCirculatoryComponent == null) {
+                    injuredCirculatoryComponent = getInjuredCirculatoryComponent(entityRef, layout);
+                }
+                damagePart(entityRef, injuredCirculatoryComponent, part, event.getAmount(hit), event.getDamageType(hit), gameTime);
             }
-            partHealthDetails.health -= damageAmount;
-            partHealthDetails.health = TeraMath.clamp(partHealthDetails.health, 0, partHealthDetails.maxHealth);
-            partHealthDetails.nextRegenTick = time.getGameTimeInMs() + TeraMath.floorToInt(partHealthDetails.waitBeforeRegen * 1000);
-            entityRef.saveComponent(injuredCirculatoryComponent);
-            entityRef.send(new PartCirculatoryHealthChangedEvent(event.getTargetPart().id));
         }
+        metrics.stopTimer("CirculatoryHealthSystem.onPartsImpacted", start);
+    }
+
+    @Override
+    public void healPart(EntityRef entityRef, int part) {
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent != null && part < injuredCirculatoryComponent.partHealths.size()) {
+            injuredCirculatoryComponent.partHealths.heal(part);
+            changeTracker.markPartChanged(entityRef, CIRCULATORY_SUBSYSTEM, part);
+        }
+    }
+
+    @Override
+    public void healAll(EntityRef entityRef) {
+        if (entityRef.hasComponent(InjuredCirculatoryComponent.class)) {
+            entityRef.removeComponent(InjuredCirculatoryComponent.class);
+        }
+    }
+
+    /**
+     * Gets the injured circulatory component of an entity, adding it if the entity isn't injured yet, sized for its
+     * layout.
+     */
+    private InjuredCirculatoryComponent getInjuredCirculatoryComponent(EntityRef entityRef, AnatomyLayout layout) {
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent == null) {
+            injuredCirculatoryComponent = new InjuredCirculatoryComponent();
+            entityRef.addComponent(injuredCirculatoryComponent);
+            metrics.count(AnatomyMetrics.Counter.COMPONENT_WRITES);
+        }
+        injuredCirculatoryComponent.partHealths.bindLayout(layout);
+        return injuredCirculatoryComponent;
     }
 
-    private int regenerateHealth(PartHealthDetails partDetails, int healAmount) {
-        int newHeal = healAmount;
-        while (time.getGameTimeInMs() >= partDetails.nextRegenTick) {
-            newHeal++;
-            partDetails.nextRegenTick = partDetails.nextRegenTick + (long) (1000 / partDetails.regenRate);
+    private void damagePart(EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent, int part, int amount,
+                            Prefab damageType, long gameTime) {
+        long start = tracing.isEnabled() ? System.nanoTime() : 0;
+        PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+        int damageAmount = (int) (amount * damageTypeRegistry.getMultiplier(damageType, CIRCULATORY_SUBSYSTEM));
+        partHealths.damage(part, damageAmount, gameTime);
+        partHealths.nextThresholdTime[part] = partHealths.getNextThresholdTime(part, gameTime, CirculatorySystem.SEVERITY_THRESHOLDS);
+        injuredCirculatoryComponent.nextThresholdTime = Math.min(injuredCirculatoryComponent.nextThresholdTime,
+                partHealths.nextThresholdTime[part]);
+        changeTracker.markPartChanged(entityRef, CIRCULATORY_SUBSYSTEM, part);
+        if (tracing.isEnabled()) {
+            tracing.getListener().onPartDamaged(entityRef, CIRCULATORY_SUBSYSTEM, part, damageAmount, System.nanoTime() - start);
         }
-        return newHeal;
     }
 }
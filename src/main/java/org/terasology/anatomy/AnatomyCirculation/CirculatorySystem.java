@@ -2,25 +2,35 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomyCirculation;
 
-import com.google.common.collect.Lists;
+import org.terasology.anatomy.AnatomyChangeTracker;
 import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
 import org.terasology.anatomy.AnatomyCirculation.event.PartCirculatoryEffectChangedEvent;
-import org.terasology.anatomy.AnatomyCirculation.event.PartCirculatoryHealthChangedEvent;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyEffect;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomyMetrics;
+import org.terasology.anatomy.AnatomyStatusPublisher;
+import org.terasology.anatomy.AnatomyTracing;
 import org.terasology.anatomy.component.AnatomyComponent;
-import org.terasology.anatomy.component.PartHealthDetails;
-import org.terasology.anatomy.event.AnatomyStatusGatheringEvent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.console.commandSystem.annotations.Command;
 import org.terasology.engine.logic.console.commandSystem.annotations.Sender;
 import org.terasology.engine.logic.players.event.OnPlayerRespawnedEvent;
 import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.registry.In;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.BitSet;
 
 @RegisterSystem
 public class CirculatorySystem extends BaseComponentSystem {
@@ -29,74 +39,104 @@ public class CirculatorySystem extends BaseComponentSystem {
     private static final float BLEEDING_THRESHOLD = 0.5f;
     private static final float SEVERE_BLEEDING_THRESHOLD = 0.2f;
 
-    private final Map<Integer, String> severityNameMap = new HashMap<>();
+    /**
+     * Health fractions at which the severity of the bleeding effect changes.
+     */
+    public static final float[] SEVERITY_THRESHOLDS = {MINOR_BLEEDING_THRESHOLD, BLEEDING_THRESHOLD, SEVERE_BLEEDING_THRESHOLD};
 
-    @Override
-    public void initialise() {
-        severityNameMap.put(1, "Minor bleeding");
-        severityNameMap.put(2, "Bleeding");
-        severityNameMap.put(3, "Severe bleeding");
-    }
+    public static final AnatomyEffect MINOR_BLEEDING = new AnatomyEffect(CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, 1, "Minor bleeding");
+    public static final AnatomyEffect BLEEDING = new AnatomyEffect(CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, 2, "Bleeding");
+    public static final AnatomyEffect SEVERE_BLEEDING = new AnatomyEffect(CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, 3, "Severe bleeding");
 
-    @ReceiveEvent
-    public void onPartCirculatoryHealthChanged(PartCirculatoryHealthChangedEvent event, EntityRef entityRef,
-                                               AnatomyComponent anatomyComponent, InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        int severity = getEffectSeverity(event.partId, injuredCirculatoryComponent);
-        if (severity == 0) {
-            removeEffect(entityRef, event.partId);
-        } else {
-            applyEffect(entityRef, event.partId, severity);
-        }
-    }
+    /**
+     * Maps each effect severity to its effect.
+     */
+    public static final AnatomyEffect[] SEVERITY_EFFECTS = {null, MINOR_BLEEDING, BLEEDING, SEVERE_BLEEDING};
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    @In
+    private AnatomyMetrics metrics;
+
+    @In
+    private AnatomyTracing tracing;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyStatusPublisher statusPublisher;
 
     @ReceiveEvent
-    public void onGather(AnatomyStatusGatheringEvent event, EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        if (event.getSystemFilter().equals("") || event.getSystemFilter().equals("Skeletal")) {
-            for (Map.Entry<String, List<String>> injuredCirculatoryEffect : injuredCirculatoryComponent.parts.entrySet()) {
-                for (String part : injuredCirculatoryEffect.getValue()) {
-                    event.addEffect(part, severityNameMap.get(Integer.parseInt(injuredCirculatoryEffect.getKey())));
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
+                               InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
+        BitSet changedParts = event.getChangedParts(CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM);
+        for (int part = changedParts.nextSetBit(0); part >= 0; part = changedParts.nextSetBit(part + 1)) {
+            int severity = getEffectSeverity(part, injuredCirculatoryComponent);
+            int previousSeverity = injuredCirculatoryComponent.partHealths.setSeverity(part, severity);
+            if (previousSeverity != severity) {
+                metrics.count(AnatomyMetrics.Counter.SEVERITY_TRANSITIONS);
+                if (tracing.isEnabled()) {
+                    tracing.getListener().onSeverityChanged(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part,
+                            previousSeverity, severity);
                 }
+                entityRef.send(new PartCirculatoryEffectChangedEvent(part, previousSeverity, severity));
             }
+            // Also pushed without a transition, as the severity may have been replicated before the change.
+            statusPublisher.setEffect(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part, SEVERITY_EFFECTS[severity]);
         }
+        metrics.stopTimer("CirculatorySystem.onPartsChanged", start);
     }
 
-    private void applyEffect(EntityRef entityRef, String partId, int severity) {
-        if (entityRef.getComponent(InjuredCirculatoryComponent.class) == null) {
-            entityRef.addComponent(new InjuredCirculatoryComponent());
-        }
-        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
-        for (Map.Entry<String, List<String>> partsOfSeverity : injuredCirculatoryComponent.parts.entrySet()) {
-            if (partsOfSeverity.getValue().contains(partId)) {
-                if (Integer.parseInt(partsOfSeverity.getKey()) == severity) {
-                    return;
-                } else {
-                    partsOfSeverity.getValue().remove(partId);
-                }
-            }
-        }
-        if (injuredCirculatoryComponent.parts.containsKey(String.valueOf(severity))) {
-            injuredCirculatoryComponent.parts.get(String.valueOf(severity)).add(partId);
-        } else {
-            injuredCirculatoryComponent.parts.put(String.valueOf(severity), Lists.newArrayList(partId));
-        }
-        entityRef.saveComponent(injuredCirculatoryComponent);
-        entityRef.send(new PartCirculatoryEffectChangedEvent());
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onInjuryActivated(OnActivatedComponent event, EntityRef entityRef) {
+        long start = metrics.startTimer();
+        publishEffects(entityRef, entityRef.getComponent(InjuredCirculatoryComponent.class));
+        metrics.stopTimer("CirculatorySystem.onInjuryActivated", start);
     }
 
-    private void removeEffect(EntityRef entityRef, String partId) {
-        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
-        if (injuredCirculatoryComponent != null) {
-            for (Map.Entry<String, List<String>> partsOfSeverity : injuredCirculatoryComponent.parts.entrySet()) {
-                partsOfSeverity.getValue().remove(partId);
-            }
-            entityRef.saveComponent(injuredCirculatoryComponent);
-            entityRef.send(new PartCirculatoryEffectChangedEvent());
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onInjuryChanged(OnChangedComponent event, EntityRef entityRef) {
+        long start = metrics.startTimer();
+        publishEffects(entityRef, entityRef.getComponent(InjuredCirculatoryComponent.class));
+        metrics.stopTimer("CirculatorySystem.onInjuryChanged", start);
+    }
+
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onInjuryDeactivated(BeforeDeactivateComponent event, EntityRef entityRef) {
+        long start = metrics.startTimer();
+        statusPublisher.clearEffects(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM);
+        metrics.stopTimer("CirculatorySystem.onInjuryDeactivated", start);
+    }
+
+    /**
+     * Publishes the effects again when the anatomy definition of the entity is reloaded, as the effects published so
+     * far are indexed by the parts of the previous layout. Runs after the parts have been moved to the new layout.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef,
+                                InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
+        statusPublisher.clearEffects(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM);
+        publishEffects(entityRef, injuredCirculatoryComponent);
+        metrics.stopTimer("CirculatorySystem.onLayoutChanged", start);
+    }
+
+    private void publishEffects(EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        byte[] severities = injuredCirculatoryComponent.partHealths.severity;
+        for (int part = 0; part < severities.length; part++) {
+            statusPublisher.setEffect(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part, SEVERITY_EFFECTS[severities[part]]);
         }
     }
 
-    private int getEffectSeverity(String partId, InjuredCirculatoryComponent injuredCirculatoryComponent) {
-        int maxHealth = injuredCirculatoryComponent.partHealths.get(partId).maxHealth;
-        int health = injuredCirculatoryComponent.partHealths.get(partId).health;
+    private int getEffectSeverity(int partIndex, InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        int maxHealth = injuredCirculatoryComponent.partHealths.maxHealth[partIndex];
+        int health = injuredCirculatoryComponent.partHealths.getHealth(partIndex, clock.getGameTimeInMs());
         float healthPercent = (float) health / maxHealth;
         int severity = 0;
         if (healthPercent > BLEEDING_THRESHOLD && healthPercent <= MINOR_BLEEDING_THRESHOLD) {
@@ -112,7 +152,9 @@ public class CirculatorySystem extends BaseComponentSystem {
     @ReceiveEvent
     public void onPlayerRespawn(OnPlayerRespawnedEvent event, EntityRef entityRef,
                                 InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        long start = metrics.startTimer();
         entityRef.removeComponent(InjuredCirculatoryComponent.class);
+        metrics.stopTimer("CirculatorySystem.onPlayerRespawn", start);
     }
 
     @Command(shortDescription = "Show circulatory healths of all injured parts")
@@ -121,17 +163,20 @@ public class CirculatorySystem extends BaseComponentSystem {
         InjuredCirculatoryComponent injuredCirculatoryComponent = character.getComponent(InjuredCirculatoryComponent.class);
         String result = "";
         if (injuredCirculatoryComponent != null) {
+            long gameTime = clock.getGameTimeInMs();
             result += "Blood level : ";
-            result += injuredCirculatoryComponent.bloodLevel + "/" +
+            result += injuredCirculatoryComponent.getBloodLevel(gameTime) + "/" +
                     injuredCirculatoryComponent.maxBloodLevel +
                     " Blood regen rate: " +
                     injuredCirculatoryComponent.bloodRegenRate + "\n";
             result += "Circulatory system healths :\n";
-            for (Map.Entry<String, PartHealthDetails> partHealthDetailsEntry : injuredCirculatoryComponent.partHealths.entrySet()) {
-                result +=
-                        partHealthDetailsEntry.getKey()
-                                + " :" + partHealthDetailsEntry.getValue().health
-                                + "/" + partHealthDetailsEntry.getValue().maxHealth + "\n";
+            AnatomyLayout layout = layoutRegistry.getLayout(character.getComponent(AnatomyComponent.class));
+            PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+            for (int part = 0; part < partHealths.size(); part++) {
+                int health = partHealths.getHealth(part, gameTime);
+                if (health < partHealths.maxHealth[part]) {
+                    result += layout.getPartId(part) + " :" + health + "/" + partHealths.maxHealth[part] + "\n";
+                }
             }
         } else {
             result += "Circulatory system healthy.\n";
@@ -139,14 +184,17 @@ public class CirculatorySystem extends BaseComponentSystem {
         return result;
     }
 
-    @Command(shortDescription = "Heal all circulatory system parts to full health")
+    @Command(shortDescription = "Heal all circulatory system parts to full health", runOnServer = true)
     public String healAllCirculation(@Sender EntityRef client) {
         EntityRef character = client.getComponent(ClientComponent.class).character;
         InjuredCirculatoryComponent injuredCirculatoryComponent = character.getComponent(InjuredCirculatoryComponent.class);
         if (injuredCirculatoryComponent != null) {
-            for (Map.Entry<String, PartHealthDetails> partHealthDetailsEntry : injuredCirculatoryComponent.partHealths.entrySet()) {
-                partHealthDetailsEntry.getValue().health = partHealthDetailsEntry.getValue().maxHealth;
-                character.send(new PartCirculatoryHealthChangedEvent(partHealthDetailsEntry.getKey()));
+            for (int part = 0; part < injuredCirculatoryComponent.partHealths.size(); part++) {
+                injuredCirculatoryComponent.partHealths.heal(part);
+                changeTracker.markPartChanged(character, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part);
+                if (tracing.isEnabled()) {
+                    tracing.getListener().onPartHealed(character, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part);
+                }
             }
         }
         return "Circulatory healths fully restored.";
@@ -2,53 +2,222 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomyCirculation.component;
 
-import com.google.common.collect.Lists;
-import org.terasology.anatomy.component.PartHealthDetails;
+import org.terasology.anatomy.component.AnatomySummaryComponent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.engine.network.FieldReplicateType;
 import org.terasology.engine.network.Replicate;
 import org.terasology.gestalt.entitysystem.component.Component;
+import org.terasology.math.TeraMath;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 
+/**
+ * This component contains injured circulatory system details. They are only replicated to the owner of the entity, the
+ * other clients get the {@link AnatomySummaryComponent}.
+ */
 public class InjuredCirculatoryComponent implements Component<InjuredCirculatoryComponent> {
     /**
-     * Maps each part to its health details.
+     * Number of buckets of the blood level in the {@link AnatomySummaryComponent}.
      */
-    @Replicate
-    public Map<String, PartHealthDetails> partHealths = new HashMap<>();
+    public static final int BLOOD_LEVEL_BUCKETS = 10;
 
     /**
-     * Maps severity to the list of parts affected.
+     * Size in bytes of the blood level delta: blood level, blood regen rate and blood anchor time.
      */
-    @Replicate
-    public Map<String, List<String>> parts = new HashMap<>();
+    private static final int BLOOD_DELTA_SIZE = Integer.BYTES + Float.BYTES + Long.BYTES;
 
-    @Replicate
+    /**
+     * Health details of each part, indexed by the part indices of the anatomy layout.
+     */
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
+    public PartHealthTable partHealths = new PartHealthTable();
+
+    /**
+     * Blood level at the blood anchor time. Use {@link #getBloodLevel(long)} for the current blood level.
+     */
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
     public int bloodLevel = 100;
 
-    @Replicate
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
     public int maxBloodLevel = 100;
 
-    @Replicate
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
     public float baseBloodRegenRate = 1.0f;
 
-    @Replicate
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
     public float bloodRegenRate = 1.0f;
 
-    public long nextRegenTick;
+    /**
+     * Game time in ms at which the blood level changes by its first unit at the current blood regen rate.
+     */
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
+    public long bloodAnchorTime;
+
+    /**
+     * Game time in ms at which the blood level reaches zero. This and the following times are not persisted or
+     * replicated, and are derived again when the component is activated.
+     */
+    public transient long bloodDepletionTime = Long.MAX_VALUE;
+
+    /**
+     * Game time in ms at which the blood level regenerates back to the max blood level.
+     */
+    public transient long bloodRecoveryTime = Long.MAX_VALUE;
+
+    /**
+     * Game time in ms at which the blood level enters another bucket of the summary.
+     */
+    public transient long bloodBucketTime = Long.MAX_VALUE;
+
+    /**
+     * Game time in ms at which the next part crosses a severity threshold, or the blood level reaches zero, recovers or
+     * enters another bucket.
+     */
+    public transient long nextThresholdTime = Long.MAX_VALUE;
+
+    /**
+     * Whether the anchored blood level changed since the component was last replicated. Not persisted or replicated.
+     */
+    public transient boolean bloodDirty;
+
+    /**
+     * Gets the blood level at a particular game time.
+     *
+     * @param gameTime The game time in ms.
+     * @return The blood level.
+     */
+    public int getBloodLevel(long gameTime) {
+        if (gameTime < bloodAnchorTime || bloodRegenRate == 0) {
+            return bloodLevel;
+        }
+        long units = (long) ((gameTime - bloodAnchorTime) * TeraMath.fastAbs(bloodRegenRate) / 1000) + 1;
+        long newBloodLevel = bloodRegenRate > 0 ? bloodLevel + units : bloodLevel - units;
+        return (int) Math.max(0, Math.min(maxBloodLevel, newBloodLevel));
+    }
+
+    /**
+     * Changes the blood regen rate, re-anchoring the blood level at the current game time.
+     *
+     * @param rate The new blood regen rate in units per second.
+     * @param gameTime The current game time in ms.
+     */
+    public void setBloodRegenRate(float rate, long gameTime) {
+        bloodLevel = getBloodLevel(gameTime);
+        bloodRegenRate = rate;
+        if (rate != 0) {
+            bloodAnchorTime = gameTime + (long) (1000 / TeraMath.fastAbs(rate));
+        }
+        bloodDepletionTime = bloodRegenRate < 0
+                ? bloodAnchorTime + (long) Math.ceil((bloodLevel - 1) * 1000 / TeraMath.fastAbs(bloodRegenRate))
+                : Long.MAX_VALUE;
+        bloodRecoveryTime = bloodRegenRate > 0 && bloodLevel < maxBloodLevel
+                ? bloodAnchorTime + (long) Math.ceil((maxBloodLevel - bloodLevel - 1) * 1000 / bloodRegenRate)
+                : Long.MAX_VALUE;
+        bloodBucketTime = getNextBloodBucketTime(gameTime);
+        bloodDirty = true;
+    }
+
+    /**
+     * @return The earliest game time in ms at which the blood level reaches zero, recovers or enters another bucket.
+     */
+    public long getNextBloodTime() {
+        return Math.min(bloodBucketTime, Math.min(bloodDepletionTime, bloodRecoveryTime));
+    }
+
+    /**
+     * Gets the bucket of the blood level at a particular game time, from 0 when empty to {@link #BLOOD_LEVEL_BUCKETS}
+     * when full.
+     *
+     * @param gameTime The game time in ms.
+     * @return The bucket of the blood level.
+     */
+    public int getBloodLevelBucket(long gameTime) {
+        return maxBloodLevel > 0 ? getBloodLevel(gameTime) * BLOOD_LEVEL_BUCKETS / maxBloodLevel : BLOOD_LEVEL_BUCKETS;
+    }
+
+    /**
+     * Gets the game time at which the blood level enters the next bucket at the current blood regen rate.
+     *
+     * @param gameTime The current game time in ms.
+     * @return The game time in ms, or {@link Long#MAX_VALUE} if the bucket won't change.
+     */
+    public long getNextBloodBucketTime(long gameTime) {
+        int bucket = getBloodLevelBucket(gameTime);
+        int targetLevel;
+        if (bloodRegenRate > 0 && bucket < BLOOD_LEVEL_BUCKETS) {
+            // Lowest blood level in the next bucket.
+            targetLevel = ((bucket + 1) * maxBloodLevel + BLOOD_LEVEL_BUCKETS - 1) / BLOOD_LEVEL_BUCKETS;
+        } else if (bloodRegenRate < 0 && bucket > 0) {
+            // Highest blood level in the previous bucket.
+            targetLevel = (bucket * maxBloodLevel + BLOOD_LEVEL_BUCKETS - 1) / BLOOD_LEVEL_BUCKETS - 1;
+        } else {
+            return Long.MAX_VALUE;
+        }
+        int units = Math.abs(targetLevel - bloodLevel);
+        return bloodAnchorTime + (long) Math.ceil((units - 1) * 1000 / TeraMath.fastAbs(bloodRegenRate));
+    }
+
+    /**
+     * Checks whether all the parts are healed and the blood level is full at a particular game time.
+     *
+     * @param gameTime The game time in ms.
+     * @return Whether there is no circulatory injury left.
+     */
+    public boolean isHealed(long gameTime) {
+        return partHealths.isHealed(gameTime) && getBloodLevel(gameTime) >= maxBloodLevel;
+    }
+
+    /**
+     * @return The number of bytes needed by {@link #writeDelta(ByteBuffer)}.
+     */
+    public int getDeltaSize() {
+        int size = Byte.BYTES + partHealths.getDeltaSize();
+        return bloodDirty ? size + BLOOD_DELTA_SIZE : size;
+    }
+
+    /**
+     * Writes the anchored blood level, if it changed, and the dirty parts to a buffer, clearing the dirty state.
+     *
+     * @param buffer The buffer to write to, with at least {@link #getDeltaSize()} bytes remaining.
+     */
+    public void writeDelta(ByteBuffer buffer) {
+        buffer.put((byte) (bloodDirty ? 1 : 0));
+        if (bloodDirty) {
+            buffer.putInt(bloodLevel);
+            buffer.putFloat(bloodRegenRate);
+            buffer.putLong(bloodAnchorTime);
+            bloodDirty = false;
+        }
+        partHealths.writeDelta(buffer);
+    }
+
+    /**
+     * Applies a delta written by {@link #writeDelta(ByteBuffer)} to the component.
+     *
+     * @param buffer The buffer to read from.
+     * @return The parts in the delta, whose severities must be derived again.
+     */
+    public BitSet applyDelta(ByteBuffer buffer) {
+        if (buffer.get() != 0) {
+            bloodLevel = buffer.getInt();
+            bloodRegenRate = buffer.getFloat();
+            bloodAnchorTime = buffer.getLong();
+        }
+        return partHealths.applyDelta(buffer);
+    }
 
     @Override
     public void copyFrom(InjuredCirculatoryComponent other) {
-        this.partHealths.clear();
-        other.partHealths.forEach((k, v) -> this.partHealths.put(k, v.copy()));
-        this.parts.clear();
-        other.parts.forEach((k, v) -> this.parts.put(k, Lists.newArrayList(v)));
+        this.partHealths = other.partHealths.copy();
         this.bloodLevel = other.bloodLevel;
         this.maxBloodLevel = other.maxBloodLevel;
         this.baseBloodRegenRate = other.baseBloodRegenRate;
         this.bloodRegenRate = other.bloodRegenRate;
-        this.nextRegenTick = other.nextRegenTick;
-
+        this.bloodAnchorTime = other.bloodAnchorTime;
+        this.bloodDepletionTime = other.bloodDepletionTime;
+        this.bloodRecoveryTime = other.bloodRecoveryTime;
+        this.bloodBucketTime = other.bloodBucketTime;
+        this.nextThresholdTime = other.nextThresholdTime;
     }
 }
@@ -0,0 +1,23 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.AnatomyCirculation.event;
+
+import org.terasology.engine.network.OwnerEvent;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * This event is sent to the owner of the entity with the blood level and the parts whose circulatory health
+ * changed since the last replication, encoded by
+ * {@link org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent#writeDelta(java.nio.ByteBuffer)}.
+ */
+@OwnerEvent
+public class CirculatoryDeltaEvent implements Event {
+    public byte[] delta;
+
+    public CirculatoryDeltaEvent() {
+    }
+
+    public CirculatoryDeltaEvent(byte[] delta) {
+        this.delta = delta;
+    }
+}
@@ -5,4 +5,13 @@ package org.terasology.anatomy.AnatomyCirculation.event;
 import org.terasology.gestalt.entitysystem.event.Event;
 
 public class PartCirculatoryEffectChangedEvent implements Event {
+    public int partIndex;
+    public int previousSeverity;
+    public int severity;
+
+    public PartCirculatoryEffectChangedEvent(int partIndex, int previousSeverity, int severity) {
+        this.partIndex = partIndex;
+        this.previousSeverity = previousSeverity;
+        this.severity = severity;
+    }
 }
@@ -0,0 +1,48 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+/**
+ * The game time used by the anatomy systems. It follows the engine's game time, except while a {@link Simulation} is
+ * running, so that benchmarks and scale tests can simulate minutes of regeneration without waiting for them.
+ */
+public interface AnatomyClock {
+    /**
+     * @return The current anatomy game time in ms, the simulated time while a simulation is running.
+     */
+    long getGameTimeInMs();
+
+    /**
+     * Starts a simulation, during which the anatomy systems read the simulated time instead of the engine's game time.
+     * The simulated time never outlives the simulation: once it is closed, the anatomy game time follows the engine's
+     * game time again. Only one simulation can run at a time, and it must be closed before the end of the tick.
+     *
+     * @param gameTime The game time in ms to start the simulation at.
+     * @return The simulation, to be closed with try-with-resources.
+     * @throws IllegalStateException If a simulation is already running.
+     */
+    Simulation startSimulation(long gameTime);
+
+    /**
+     * A simulated game time, in effect until it is closed.
+     */
+    interface Simulation extends AutoCloseable {
+        /**
+         * @return The simulated game time in ms.
+         */
+        long getGameTimeInMs();
+
+        /**
+         * Moves the simulated game time ahead.
+         *
+         * @param ms The time in ms to move ahead by.
+         */
+        void advance(long ms);
+
+        /**
+         * Ends the simulation, returning to the engine's game time.
+         */
+        @Override
+        void close();
+    }
+}
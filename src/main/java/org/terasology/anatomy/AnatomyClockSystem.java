@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.core.Time;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+
+/**
+ * Provides the {@link AnatomyClock}, reading the engine's game time, or the simulated time while a simulation runs.
+ */
+@RegisterSystem
+@Share(AnatomyClock.class)
+public class AnatomyClockSystem extends BaseComponentSystem implements AnatomyClock {
+    @In
+    private Time time;
+
+    /**
+     * The running simulation, null if none.
+     */
+    private SimulatedTime simulation;
+
+    @Override
+    public long getGameTimeInMs() {
+        return simulation != null ? simulation.gameTime : time.getGameTimeInMs();
+    }
+
+    @Override
+    public Simulation startSimulation(long gameTime) {
+        if (simulation != null) {
+            throw new IllegalStateException("An anatomy simulation is already running");
+        }
+        simulation = new SimulatedTime(gameTime);
+        return simulation;
+    }
+
+    private final class SimulatedTime implements Simulation {
+        private long gameTime;
+
+        SimulatedTime(long gameTime) {
+            this.gameTime = gameTime;
+        }
+
+        @Override
+        public long getGameTimeInMs() {
+            return gameTime;
+        }
+
+        @Override
+        public void advance(long ms) {
+            gameTime += ms;
+        }
+
+        @Override
+        public void close() {
+            if (simulation == this) {
+                simulation = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+
+/**
+ * Deals damage to many anatomy parts at once, like the hits of an explosion or an area effect. The hits are grouped by
+ * entity, so each sub-system applies all the hits on an entity in one pass and the entity is written out once.
+ */
+public interface AnatomyDamageManager {
+    /**
+     * Damages anatomy parts. The hit at each index i is described by the elements at index i of the arrays, which must
+     * all have the same length.
+     *
+     * @param entities The entities hit.
+     * @param parts The indices of the parts hit, in the {@link AnatomyLayout} of their entity.
+     * @param amounts The amounts of damage dealt.
+     * @param damageTypes The types of damage dealt.
+     * @param instigator The entity which caused all the hits.
+     */
+    void damageParts(EntityRef[] entities, int[] parts, int[] amounts, Prefab[] damageTypes, EntityRef instigator);
+}
@@ -0,0 +1,31 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.prefab.Prefab;
+
+/**
+ * Resolves the multiplier applied to the damage each anatomy sub-system receives from a damage type.
+ * <p>
+ * Multipliers are read from the {@link org.terasology.anatomy.component.AnatomyDamageMultiplierComponent} of the
+ * damage type prefab, falling back to the defaults registered by the sub-systems.
+ */
+public interface AnatomyDamageTypeRegistry {
+    /**
+     * Registers the multiplier for a damage type that doesn't define its own multipliers.
+     *
+     * @param damageType The name of the damage type prefab, like "Equipment:bluntDamage".
+     * @param subsystem The name of the sub-system, like "Skeletal".
+     * @param multiplier The multiplier applied to the damage the sub-system receives.
+     */
+    void registerDefault(String damageType, String subsystem, float multiplier);
+
+    /**
+     * Gets the multiplier applied to the damage a sub-system receives from a damage type.
+     *
+     * @param damageType The damage type prefab.
+     * @param subsystem The name of the sub-system.
+     * @return The damage multiplier, 1 if none is defined.
+     */
+    float getMultiplier(Prefab damageType, String subsystem);
+}
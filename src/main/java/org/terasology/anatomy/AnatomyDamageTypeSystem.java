@@ -0,0 +1,67 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.component.AnatomyDamageMultiplierComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.Share;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the anatomy damage multipliers of each damage type prefab once, and caches them per prefab.
+ */
+@RegisterSystem
+@Share(AnatomyDamageTypeRegistry.class)
+public class AnatomyDamageTypeSystem extends BaseComponentSystem implements AnatomyDamageTypeRegistry {
+
+    /**
+     * Maps the name of each damage type to the default multipliers of the sub-systems.
+     */
+    private final Map<String, Map<String, Float>> defaultMultipliers = new HashMap<>();
+
+    /**
+     * Maps each damage type prefab to the resolved multipliers of the sub-systems.
+     */
+    private final Map<Prefab, Map<String, Float>> resolvedMultipliers = new IdentityHashMap<>();
+
+    @Override
+    public void registerDefault(String damageType, String subsystem, float multiplier) {
+        defaultMultipliers.computeIfAbsent(damageType, key -> new HashMap<>()).put(subsystem, multiplier);
+        resolvedMultipliers.clear();
+    }
+
+    @Override
+    public float getMultiplier(Prefab damageType, String subsystem) {
+        if (damageType == null) {
+            return 1f;
+        }
+        Map<String, Float> multipliers = resolvedMultipliers.get(damageType);
+        if (multipliers == null) {
+            multipliers = resolve(damageType);
+            resolvedMultipliers.put(damageType, multipliers);
+        }
+        Float multiplier = multipliers.get(subsystem);
+        return multiplier != null ? multiplier : 1f;
+    }
+
+    /**
+     * Merges the default multipliers of a damage type with the ones defined by its prefab.
+     */
+    private Map<String, Float> resolve(Prefab damageType) {
+        Map<String, Float> multipliers = new HashMap<>();
+        Map<String, Float> defaults = defaultMultipliers.get(damageType.getName());
+        if (defaults != null) {
+            multipliers.putAll(defaults);
+        }
+        AnatomyDamageMultiplierComponent multiplierComponent = damageType.getComponent(AnatomyDamageMultiplierComponent.class);
+        if (multiplierComponent != null) {
+            multipliers.putAll(multiplierComponent.multipliers);
+        }
+        return multipliers;
+    }
+}
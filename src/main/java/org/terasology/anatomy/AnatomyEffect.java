@@ -0,0 +1,41 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+/**
+ * An effect which a sub-system applies to a part with a particular severity, like a broken bone. Effects are constants
+ * declared by their sub-systems and compared by identity.
+ */
+public final class AnatomyEffect {
+    private final String subsystem;
+    private final int severity;
+    private final String displayName;
+
+    /**
+     * @param subsystem The name of the sub-system applying the effect.
+     * @param severity The severity of the effect, starting from 1.
+     * @param displayName The name of the effect shown to players.
+     */
+    public AnatomyEffect(String subsystem, int severity, String displayName) {
+        this.subsystem = subsystem;
+        this.severity = severity;
+        this.displayName = displayName;
+    }
+
+    public String getSubsystem() {
+        return subsystem;
+    }
+
+    public int getSeverity() {
+        return severity;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
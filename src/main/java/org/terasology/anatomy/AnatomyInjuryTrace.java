@@ -0,0 +1,97 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The format of the injury traces written by the {@link AnatomyTraceRecorderSystem} and replayed by the
+ * {@link AnatomyTraceReplaySystem}.
+ * <p>
+ * A trace is split into segment files of about {@link #SEGMENT_SIZE} bytes, named by {@link #getSegmentName(String, int)}.
+ * Each segment starts with {@link #MAGIC}, {@link #VERSION} and the game time of its first record, followed by records
+ * made of a type byte, the time in ms since the previous record as a varint, and the fields of the record:
+ * <ul>
+ *     <li>{@link #STRING}: the UTF string, which gets the next string ID. Names are only written once per trace.</li>
+ *     <li>{@link #ENTITY}: the string IDs of the anatomy definition and of the prefab of the next entity ID.</li>
+ *     <li>{@link #IMPACT}: the entity ID, the part ID string, the amount and the damage type string as varints.</li>
+ *     <li>{@link #RESPAWN}: the entity ID.</li>
+ *     <li>{@link #HEAL}: the entity ID, the sub-system string and the part ID string.</li>
+ * </ul>
+ * The string and entity IDs are dense and shared by all the segments of a trace, and 0 stands for no string.
+ */
+public final class AnatomyInjuryTrace {
+    public static final int MAGIC = 0x41545243;
+    public static final byte VERSION = 1;
+
+    public static final byte STRING = 1;
+    public static final byte ENTITY = 2;
+    public static final byte IMPACT = 3;
+    public static final byte RESPAWN = 4;
+    public static final byte HEAL = 5;
+
+    /**
+     * Size in bytes after which a segment is written out.
+     */
+    public static final int SEGMENT_SIZE = 1 << 20;
+
+    private static final String FILE_EXTENSION = ".anatomytrace";
+
+    private AnatomyInjuryTrace() {
+    }
+
+    /**
+     * @param traceName The name of the trace.
+     * @param segment The index of the segment.
+     * @return The name of the sandbox file holding the segment of the trace.
+     */
+    public static String getSegmentName(String traceName, int segment) {
+        return traceName + "." + segment + FILE_EXTENSION;
+    }
+
+    /**
+     * Writes a non-negative value in 7-bit groups, so that small values take a single byte.
+     */
+    public static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarLong(DataOutput, long)}.
+     */
+    public static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Writes a non-negative {@code int} in 7-bit groups, like {@link #writeVarLong(DataOutput, long)}.
+     */
+    public static void writeVarInt(DataOutput output, int value) throws IOException {
+        writeVarLong(output, value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarInt(DataOutput, int)}.
+     */
+    public static int readVarInt(DataInput input) throws IOException {
+        long value = readVarLong(input);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+}
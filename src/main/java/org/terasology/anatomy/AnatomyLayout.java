@@ -0,0 +1,226 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.joml.Vector3fc;
+import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * An immutable description of the parts of an anatomy, shared by all entities with the same anatomy.
+ * <p>
+ * Every part is assigned a dense index, which the sub-systems use to store the state of a part in primitive arrays.
+ * Parts are indexed in the order of their sorted ids, so a layout has the same indices on the server and the clients.
+ * The characteristics of each part are interned into masks of {@link AnatomyTraits} bits once, when the layout is
+ * built. The abilities are indexed per layout instead, with the parts contributing to each ability.
+ */
+public final class AnatomyLayout {
+    private static final int[] NO_PARTS = new int[0];
+
+    private final String[] partIds;
+    private final AnatomyPartTag[] parts;
+    private final Map<String, Integer> partIndices = new HashMap<>();
+    private final AliasTable defaultHitTable;
+    private final PartHitVolumes hitVolumes;
+
+    /**
+     * The mask of the characteristics of each part.
+     */
+    private final long[] characteristicMasks;
+
+    /**
+     * Maps each ability to its dense index in the layout.
+     */
+    private final Map<String, Integer> abilityIndices = new HashMap<>();
+
+    /**
+     * The indices of the parts contributing to each ability, by ability index.
+     */
+    private final int[][] abilityParts;
+
+    /**
+     * Maps the name of each damage type with its own hit weights to its hit table.
+     */
+    private final Map<String, AliasTable> damageTypeHitTables = new HashMap<>();
+
+    /**
+     * Caches the hit table of each damage type prefab which damaged an entity with this layout.
+     */
+    private final Map<Prefab, AliasTable> resolvedHitTables = new IdentityHashMap<>();
+
+    /**
+     * @param partMap Maps the ID of each part to the part.
+     * @param traits The traits to intern the characteristics of the parts into.
+     */
+    AnatomyLayout(Map<String, AnatomyPartTag> partMap, AnatomyTraits traits) {
+        partIds = partMap.keySet().toArray(new String[0]);
+        Arrays.sort(partIds);
+        parts = new AnatomyPartTag[partIds.length];
+        characteristicMasks = new long[partIds.length];
+        Map<String, BitSet> contributingParts = new HashMap<>();
+        for (int i = 0; i < partIds.length; i++) {
+            parts[i] = partMap.get(partIds[i]).copy();
+            partIndices.put(partIds[i], i);
+            characteristicMasks[i] = traits.intern(parts[i].characteristics);
+            for (String ability : parts[i].abilities) {
+                contributingParts.computeIfAbsent(ability, key -> new BitSet()).set(i);
+            }
+        }
+        String[] abilities = contributingParts.keySet().toArray(new String[0]);
+        Arrays.sort(abilities);
+        abilityParts = new int[abilities.length][];
+        for (int i = 0; i < abilities.length; i++) {
+            abilityIndices.put(abilities[i], i);
+            abilityParts[i] = contributingParts.get(abilities[i]).stream().toArray();
+        }
+
+        float[] hitWeights = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            hitWeights[i] = parts[i].hitWeight;
+        }
+        defaultHitTable = new AliasTable(hitWeights);
+        hitVolumes = new PartHitVolumes(parts);
+        for (AnatomyPartTag part : parts) {
+            for (String damageType : part.damageTypeHitWeights.keySet()) {
+                damageTypeHitTables.computeIfAbsent(damageType, this::createHitTable);
+            }
+        }
+    }
+
+    /**
+     * Builds the hit table for a damage type, using the default hit weight for parts without an override.
+     */
+    private AliasTable createHitTable(String damageType) {
+        float[] hitWeights = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            hitWeights[i] = parts[i].damageTypeHitWeights.getOrDefault(damageType, parts[i].hitWeight);
+        }
+        return new AliasTable(hitWeights);
+    }
+
+    /**
+     * @return The number of parts in the layout.
+     */
+    public int size() {
+        return partIds.length;
+    }
+
+    /**
+     * Gets the index of a part.
+     *
+     * @param partId The ID of the part.
+     * @return The index of the part, or -1 if the layout doesn't contain the part.
+     */
+    public int getPartIndex(String partId) {
+        Integer partIndex = partIndices.get(partId);
+        return partIndex != null ? partIndex : -1;
+    }
+
+    /**
+     * Gets the ID of the part at an index.
+     */
+    public String getPartId(int partIndex) {
+        return partIds[partIndex];
+    }
+
+    /**
+     * Gets the part at an index. The returned part is shared and must not be modified.
+     */
+    public AnatomyPartTag getPart(int partIndex) {
+        return parts[partIndex];
+    }
+
+    /**
+     * Checks whether a part has any of a set of characteristics.
+     *
+     * @param partIndex The index of the part.
+     * @param characteristicMask The mask of the characteristics, from {@link AnatomyTraits}.
+     * @return Whether the part is in the layout and has any of the characteristics.
+     */
+    public boolean hasCharacteristics(int partIndex, long characteristicMask) {
+        return partIndex >= 0 && partIndex < characteristicMasks.length && (characteristicMasks[partIndex] & characteristicMask) != 0;
+    }
+
+    /**
+     * Gets the characteristics of a part.
+     *
+     * @param partIndex The index of the part.
+     * @return The mask of the characteristics of the part, from {@link AnatomyTraits}.
+     */
+    public long getCharacteristicMask(int partIndex) {
+        return characteristicMasks[partIndex];
+    }
+
+    /**
+     * Gets the parts contributing to an ability. The returned array is shared and must not be modified.
+     *
+     * @param ability The ability.
+     * @return The indices of the parts, in ascending order.
+     */
+    public int[] getContributingParts(String ability) {
+        int abilityIndex = getAbilityIndex(ability);
+        return abilityIndex >= 0 ? abilityParts[abilityIndex] : NO_PARTS;
+    }
+
+    /**
+     * @return The number of distinct abilities of the parts.
+     */
+    public int getAbilityCount() {
+        return abilityParts.length;
+    }
+
+    /**
+     * Gets the dense index of an ability, which can be used to store per-ability state in primitive arrays.
+     *
+     * @param ability The ability.
+     * @return The index of the ability, or -1 if no part contributes to it.
+     */
+    public int getAbilityIndex(String ability) {
+        Integer abilityIndex = abilityIndices.get(ability);
+        return abilityIndex != null ? abilityIndex : -1;
+    }
+
+    /**
+     * Gets the parts contributing to an ability. The returned array is shared and must not be modified.
+     *
+     * @param abilityIndex The index of the ability.
+     * @return The indices of the parts, in ascending order.
+     */
+    public int[] getContributingParts(int abilityIndex) {
+        return abilityParts[abilityIndex];
+    }
+
+    /**
+     * Gets the part whose bounding box is hit at a point.
+     *
+     * @param localPoint The hit point in entity-local space.
+     * @return The index of the part, or -1 if the point can't be resolved to a part.
+     */
+    public int getPartAt(Vector3fc localPoint) {
+        return hitVolumes.getPartAt(localPoint);
+    }
+
+    /**
+     * Gets the table used to pick the part hit by non-positional damage of a particular type.
+     *
+     * @param damageType The damage type prefab, may be null.
+     * @return The hit table, which samples part indices.
+     */
+    public AliasTable getHitTable(Prefab damageType) {
+        if (damageType == null || damageTypeHitTables.isEmpty()) {
+            return defaultHitTable;
+        }
+        AliasTable hitTable = resolvedHitTables.get(damageType);
+        if (hitTable == null) {
+            hitTable = damageTypeHitTables.getOrDefault(damageType.getName(), defaultHitTable);
+            resolvedHitTables.put(damageType, hitTable);
+        }
+        return hitTable;
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.component.AnatomyComponent;
+
+/**
+ * Resolves the {@link AnatomyLayout} of an anatomy, so that entities with the same parts share a single layout.
+ */
+public interface AnatomyLayoutRegistry {
+    /**
+     * Gets the layout of an anatomy component.
+     *
+     * @param anatomyComponent The anatomy component of an entity.
+     * @return The shared layout of the anatomy.
+     */
+    AnatomyLayout getLayout(AnatomyComponent anatomyComponent);
+
+    /**
+     * @return The traits interned by the layouts of the game.
+     */
+    AnatomyTraits getTraits();
+}
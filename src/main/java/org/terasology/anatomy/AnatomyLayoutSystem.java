@@ -0,0 +1,191 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.anatomy.asset.AnatomyDefinition;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.gestalt.assets.management.AssetManager;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resolves the anatomy definitions of the entities, compiles the layouts of the definitions, interns the layouts of the
+ * anatomies without a definition, and caches them on the {@link AnatomyComponent} of each entity. The layouts and their
+ * {@link AnatomyTraits} only live as long as this system, so a new game interns its traits again.
+ * <p>
+ * The {@link AnatomyComponent#parts} of the entities with a definition are set to a read-only view of the parts of the
+ * definition when the component is activated, so that they can still be read without copying them per entity.
+ * <p>
+ * When a definition is reloaded, the entities referencing it keep their cached layout until the next update, which
+ * switches them to the new layout and sends them an {@link AnatomyLayoutChangedEvent}, so that the part indices of
+ * their injury state are moved to the new layout at the same time.
+ */
+@RegisterSystem
+@Share(AnatomyLayoutRegistry.class)
+public class AnatomyLayoutSystem extends BaseComponentSystem implements AnatomyLayoutRegistry, UpdateSubscriberSystem {
+    private static final Logger logger = LoggerFactory.getLogger(AnatomyLayoutSystem.class);
+
+    @In
+    private AssetManager assetManager;
+
+    @In
+    private EntityManager entityManager;
+
+    /**
+     * Maps the description of each distinct set of parts to its layout.
+     */
+    private final Map<String, AnatomyLayout> layouts = new HashMap<>();
+
+    /**
+     * Maps each resolved definition to its layout, which the entities referencing it were last switched to.
+     */
+    private final Map<AnatomyDefinition, DefinitionLayout> definitionLayouts = new HashMap<>();
+
+    private final AnatomyTraits traits = new AnatomyTraits();
+
+    @Override
+    public void update(float delta) {
+        Map<AnatomyDefinition, DefinitionLayout> reloadedLayouts = new HashMap<>();
+        Iterator<Map.Entry<AnatomyDefinition, DefinitionLayout>> iterator = definitionLayouts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<AnatomyDefinition, DefinitionLayout> definitionEntry = iterator.next();
+            AnatomyDefinition definition = definitionEntry.getKey();
+            if (definition.isDisposed()) {
+                iterator.remove();
+            } else if (definition.getParts() != definitionEntry.getValue().parts) {
+                DefinitionLayout definitionLayout = new DefinitionLayout(definition.getParts());
+                definitionEntry.setValue(definitionLayout);
+                reloadedLayouts.put(definition, definitionLayout);
+            }
+        }
+        if (!reloadedLayouts.isEmpty()) {
+            for (EntityRef entityRef : entityManager.getEntitiesWith(AnatomyComponent.class)) {
+                AnatomyComponent anatomyComponent = entityRef.getComponent(AnatomyComponent.class);
+                DefinitionLayout definitionLayout = reloadedLayouts.get(anatomyComponent.definitionAsset);
+                if (definitionLayout != null) {
+                    switchLayout(entityRef, anatomyComponent, definitionLayout);
+                }
+            }
+        }
+    }
+
+    @Override
+    public AnatomyLayout getLayout(AnatomyComponent anatomyComponent) {
+        if (anatomyComponent.layout == null) {
+            AnatomyDefinition definition = resolveDefinition(anatomyComponent);
+            if (definition != null) {
+                DefinitionLayout definitionLayout = definitionLayouts.computeIfAbsent(definition,
+                        key -> new DefinitionLayout(definition.getParts()));
+                anatomyComponent.definitionAsset = definition;
+                anatomyComponent.layout = definitionLayout.layout;
+                anatomyComponent.parts = definitionLayout.sharedParts;
+            } else {
+                anatomyComponent.layout = layouts.computeIfAbsent(getLayoutKey(anatomyComponent.parts),
+                        key -> new AnatomyLayout(anatomyComponent.parts, traits));
+            }
+        }
+        return anatomyComponent.layout;
+    }
+
+    @Override
+    public AnatomyTraits getTraits() {
+        return traits;
+    }
+
+    /**
+     * Switches an entity to the new layout of its reloaded definition.
+     */
+    private void switchLayout(EntityRef entityRef, AnatomyComponent anatomyComponent, DefinitionLayout definitionLayout) {
+        AnatomyLayout previousLayout = anatomyComponent.layout;
+        AnatomyLayout layout = definitionLayout.layout;
+        anatomyComponent.layout = layout;
+        anatomyComponent.parts = definitionLayout.sharedParts;
+        if (previousLayout != null && previousLayout != layout) {
+            entityRef.send(new AnatomyLayoutChangedEvent(previousLayout, layout));
+        }
+    }
+
+    /**
+     * Resolves the definition of an anatomy.
+     *
+     * @return The definition, or null if the anatomy has no definition or it can't be found.
+     */
+    private AnatomyDefinition resolveDefinition(AnatomyComponent anatomyComponent) {
+        if (anatomyComponent.definition.isEmpty()) {
+            return null;
+        }
+        AnatomyDefinition definition = assetManager.getAsset(anatomyComponent.definition, AnatomyDefinition.class).orElse(null);
+        if (definition == null) {
+            logger.warn("Anatomy definition {} not found, using the parts of the component", anatomyComponent.definition);
+        }
+        return definition;
+    }
+
+    /**
+     * Resolves the layout of an anatomy when it is loaded, which fills the parts of an anatomy with a definition.
+     */
+    @ReceiveEvent
+    public void onAnatomyActivated(OnActivatedComponent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        getLayout(anatomyComponent);
+    }
+
+    /**
+     * Drops the cached layout and definition when the anatomy of an entity changes.
+     */
+    @ReceiveEvent
+    public void onAnatomyChanged(OnChangedComponent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        anatomyComponent.layout = null;
+        anatomyComponent.definitionAsset = null;
+    }
+
+    /**
+     * Returns a description of the parts which is equal for all anatomies with the same parts.
+     */
+    private String getLayoutKey(Map<String, AnatomyPartTag> parts) {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, AnatomyPartTag> partEntry : new TreeMap<>(parts).entrySet()) {
+            AnatomyPartTag partTag = partEntry.getValue();
+            key.append(partEntry.getKey()).append('|').append(partTag.name)
+                    .append('|').append(partTag.characteristics)
+                    .append('|').append(partTag.abilities)
+                    .append('|').append(partTag.hitWeight)
+                    .append('|').append(new TreeMap<>(partTag.damageTypeHitWeights))
+                    .append('|').append(partTag.boundsMin).append('|').append(partTag.boundsMax).append(';');
+        }
+        return key.toString();
+    }
+
+    /**
+     * The layout of a definition, with the parts it was compiled from to detect the reloads of the definition, and the
+     * read-only view of the parts shared by the components of the entities referencing it.
+     */
+    private final class DefinitionLayout {
+        private final Map<String, AnatomyPartTag> parts;
+        private final Map<String, AnatomyPartTag> sharedParts;
+        private final AnatomyLayout layout;
+
+        DefinitionLayout(Map<String, AnatomyPartTag> parts) {
+            this.parts = parts;
+            this.sharedParts = Collections.unmodifiableMap(parts);
+            this.layout = new AnatomyLayout(parts, traits);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import java.util.Set;
+
+/**
+ * Counts the work done by the anatomy systems and times their event handlers, for monitoring. Metrics are only
+ * recorded while enabled; when disabled, recording a metric costs a single check.
+ */
+public interface AnatomyMetrics {
+    /**
+     * The counted kinds of work.
+     */
+    enum Counter {
+        /**
+         * Part hits processed, whether sent one by one or in bulk.
+         */
+        IMPACTS,
+        /**
+         * Parts regenerated past a severity threshold, and blood levels depleted, by the regen passes.
+         */
+        REGEN_ACTIONS,
+        /**
+         * Writes of injury components, either when they are added or as replication deltas.
+         */
+        COMPONENT_WRITES,
+        /**
+         * Changes of the effect severity of parts.
+         */
+        SEVERITY_TRANSITIONS
+    }
+
+    boolean isEnabled();
+
+    /**
+     * Enables or disables the recording of metrics. The recorded metrics are kept when disabled.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Clears all the recorded metrics.
+     */
+    void reset();
+
+    /**
+     * Counts a unit of work, if enabled.
+     */
+    void count(Counter counter);
+
+    /**
+     * @return The number of units of work counted.
+     */
+    long getCount(Counter counter);
+
+    /**
+     * Starts timing an event handler.
+     *
+     * @return The start time to pass to {@link #stopTimer(String, long)}, 0 if disabled.
+     */
+    long startTimer();
+
+    /**
+     * Records a call of an event handler, if enabled.
+     *
+     * @param handler The name of the handler, as system and method name.
+     * @param start The time returned by {@link #startTimer()}.
+     */
+    void stopTimer(String handler, long start);
+
+    /**
+     * @return The names of the timed event handlers.
+     */
+    Set<String> getHandlers();
+
+    /**
+     * @return The number of recorded calls of an event handler.
+     */
+    long getHandlerCalls(String handler);
+
+    /**
+     * @return The total time in ns spent in an event handler.
+     */
+    long getHandlerTime(String handler);
+
+    /**
+     * @return The number of entities currently injured in any sub-system.
+     */
+    int getInjuredEntityCount();
+}
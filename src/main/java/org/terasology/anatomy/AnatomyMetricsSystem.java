@@ -0,0 +1,121 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the {@link AnatomyMetrics} of the anatomy systems running locally.
+ */
+@RegisterSystem
+@Share(AnatomyMetrics.class)
+public class AnatomyMetricsSystem extends BaseComponentSystem implements AnatomyMetrics {
+    @In
+    private EntityManager entityManager;
+
+    private boolean enabled;
+    private final long[] counts = new long[Counter.values().length];
+
+    /**
+     * The calls of each timed handler.
+     */
+    private final Map<String, AnatomyTimer> handlerTimers = new TreeMap<>();
+
+    @ReceiveEvent
+    public void onPartImpacted(AnatomyPartImpactedEvent event, EntityRef entityRef) {
+        count(Counter.IMPACTS);
+    }
+
+    @ReceiveEvent
+    public void onPartsImpacted(AnatomyPartsImpactedEvent event, EntityRef entityRef) {
+        if (enabled) {
+            counts[Counter.IMPACTS.ordinal()] += event.size();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(counts, 0);
+        handlerTimers.clear();
+    }
+
+    @Override
+    public void count(Counter counter) {
+        if (enabled) {
+            counts[counter.ordinal()]++;
+        }
+    }
+
+    @Override
+    public long getCount(Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    @Override
+    public long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    @Override
+    public void stopTimer(String handler, long start) {
+        if (enabled && start != 0) {
+            handlerTimers.computeIfAbsent(handler, key -> new AnatomyTimer()).stop(start);
+        }
+    }
+
+    @Override
+    public Set<String> getHandlers() {
+        return handlerTimers.keySet();
+    }
+
+    @Override
+    public long getHandlerCalls(String handler) {
+        AnatomyTimer timer = handlerTimers.get(handler);
+        return timer != null ? timer.getCount() : 0;
+    }
+
+    @Override
+    public long getHandlerTime(String handler) {
+        AnatomyTimer timer = handlerTimers.get(handler);
+        return timer != null ? timer.getTotalTime() : 0;
+    }
+
+    @Override
+    public int getInjuredEntityCount() {
+        int count = 0;
+        for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredBoneComponent.class)) {
+            count++;
+        }
+        for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredCirculatoryComponent.class)) {
+            if (!entityRef.hasComponent(InjuredBoneComponent.class)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
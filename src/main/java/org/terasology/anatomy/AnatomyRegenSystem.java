@@ -0,0 +1,133 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.AnatomyCirculation.CirculatoryHealthSystem;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalHealthSystem;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.monitoring.Activity;
+import org.terasology.engine.monitoring.PerformanceMonitor;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+
+import java.util.Collection;
+
+/**
+ * This authority system walks all injured entities in a single pass every regen interval. Part healths and blood levels
+ * are evaluated lazily from their time-anchored values, so only the entities which have reached the time of their next
+ * severity threshold or blood depletion need any work.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(AnatomyRegenSystem.class)
+public class AnatomyRegenSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+
+    /**
+     * Time in seconds between two regen passes.
+     */
+    private static final float REGEN_INTERVAL = 1.0f;
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private SkeletalHealthSystem skeletalHealthSystem;
+
+    @In
+    private CirculatoryHealthSystem circulatoryHealthSystem;
+
+    @In
+    private AnatomyTracing tracing;
+
+    private float timeSinceLastRegen;
+
+    @Override
+    public void update(float delta) {
+        timeSinceLastRegen += delta;
+        if (timeSinceLastRegen < REGEN_INTERVAL) {
+            return;
+        }
+        timeSinceLastRegen = 0;
+        regenerate(clock.getGameTimeInMs());
+    }
+
+    /**
+     * Runs a regen pass over all injured entities.
+     *
+     * @param gameTime The current game time in ms.
+     */
+    public void regenerate(long gameTime) {
+        long start = tracing.isEnabled() ? System.nanoTime() : 0;
+        int regeneratedEntities = 0;
+        try (Activity ignored = PerformanceMonitor.startActivity("Anatomy regen")) {
+            for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredBoneComponent.class)) {
+                if (regenerateBones(entityRef, gameTime)) {
+                    regeneratedEntities++;
+                }
+            }
+            for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredCirculatoryComponent.class)) {
+                if (regenerateCirculation(entityRef, gameTime)) {
+                    regeneratedEntities++;
+                }
+            }
+        }
+        if (tracing.isEnabled()) {
+            tracing.getListener().onRegenBatch(regeneratedEntities, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs a regen pass over some entities only, like the entities of a simulation, leaving the others untouched.
+     *
+     * @param entities The entities to regenerate, injured or not.
+     * @param gameTime The current game time in ms.
+     */
+    public void regenerate(Collection<EntityRef> entities, long gameTime) {
+        long start = tracing.isEnabled() ? System.nanoTime() : 0;
+        int regeneratedEntities = 0;
+        for (EntityRef entityRef : entities) {
+            if (regenerateBones(entityRef, gameTime)) {
+                regeneratedEntities++;
+            }
+            if (regenerateCirculation(entityRef, gameTime)) {
+                regeneratedEntities++;
+            }
+        }
+        if (tracing.isEnabled()) {
+            tracing.getListener().onRegenBatch(regeneratedEntities, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Whether the skeletal injuries of the entity reached their next threshold time.
+     */
+    private boolean regenerateBones(EntityRef entityRef, long gameTime) {
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent == null || gameTime < injuredBoneComponent.nextThresholdTime) {
+            return false;
+        }
+        skeletalHealthSystem.regenerate(entityRef, injuredBoneComponent, gameTime);
+        return true;
+    }
+
+    /**
+     * @return Whether the circulatory injuries of the entity reached their next threshold time.
+     */
+    private boolean regenerateCirculation(EntityRef entityRef, long gameTime) {
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent == null || gameTime < injuredCirculatoryComponent.nextThresholdTime) {
+            return false;
+        }
+        circulatoryHealthSystem.regenerate(entityRef, injuredCirculatoryComponent, gameTime);
+        return true;
+    }
+}
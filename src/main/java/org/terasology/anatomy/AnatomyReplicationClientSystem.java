@@ -0,0 +1,324 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.AnatomyCirculation.CirculatoryHealthSystem;
+import org.terasology.anatomy.AnatomyCirculation.CirculatorySystem;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomyCirculation.event.CirculatoryDeltaEvent;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalHealthSystem;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalSystem;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.AnatomySkeleton.event.BoneHealthDeltaEvent;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.component.AnatomySummaryComponent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the injury deltas broadcast by the {@link AnatomyReplicationSystem} to the local copies of the components.
+ * <p>
+ * The deltas only hold the discontinuities of the part healths, like damage and healing. In between, the health of the
+ * parts is extrapolated from their anchored values, and this system schedules the severity thresholds locally: the parts
+ * are marked as changed when a delta arrives or their health regenerates past a threshold, so that the sub-systems
+ * derive their severities on the client without any network traffic. The changed parts are notified to the entity in a
+ * single {@link AnatomyPartsChangedEvent} per tick, like the {@link AnatomyChangeTracker} does on the authority.
+ * <p>
+ * The injury details are only replicated to the owner of an entity. The other clients only get its
+ * {@link AnatomySummaryComponent}, from which this system publishes the effects instead.
+ */
+@RegisterSystem(RegisterMode.REMOTE_CLIENT)
+public class AnatomyReplicationClientSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+
+    /**
+     * Time in seconds between two passes over the local injury components.
+     */
+    private static final float EXTRAPOLATION_INTERVAL = 1.0f;
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private AnatomyStatusPublisher statusPublisher;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    /**
+     * The indices of the changed parts of each changed entity, mapped by sub-system name, to be notified at the end of
+     * the tick.
+     */
+    private final Map<EntityRef, Map<String, BitSet>> changedEntities = new HashMap<>();
+
+    private float timeSinceLastPass;
+
+    @Override
+    public void update(float delta) {
+        sendChanges();
+        timeSinceLastPass += delta;
+        if (timeSinceLastPass < EXTRAPOLATION_INTERVAL) {
+            return;
+        }
+        timeSinceLastPass = 0;
+        long gameTime = clock.getGameTimeInMs();
+        for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredBoneComponent.class)) {
+            InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+            if (gameTime >= injuredBoneComponent.nextThresholdTime) {
+                injuredBoneComponent.nextThresholdTime = extrapolate(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM,
+                        injuredBoneComponent.partHealths, SkeletalSystem.SEVERITY_THRESHOLDS, gameTime);
+            }
+        }
+        for (EntityRef entityRef : entityManager.getEntitiesWith(InjuredCirculatoryComponent.class)) {
+            InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+            if (gameTime >= injuredCirculatoryComponent.nextThresholdTime) {
+                injuredCirculatoryComponent.nextThresholdTime = extrapolate(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM,
+                        injuredCirculatoryComponent.partHealths, CirculatorySystem.SEVERITY_THRESHOLDS, gameTime);
+            }
+        }
+        sendChanges();
+    }
+
+    /**
+     * Moves the parts of an injury component received through the normal component replication, which is keyed by part
+     * ID, to their layout indices, and schedules their thresholds, which it doesn't include.
+     */
+    @ReceiveEvent
+    public void onBoneInjuryActivated(OnActivatedComponent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent,
+                                      AnatomyComponent anatomyComponent) {
+        remapLoadedParts(injuredBoneComponent.partHealths, anatomyComponent);
+        scheduleBoneInjury(entityRef, injuredBoneComponent);
+    }
+
+    @ReceiveEvent
+    public void onCirculatoryInjuryActivated(OnActivatedComponent event, EntityRef entityRef,
+                                             InjuredCirculatoryComponent injuredCirculatoryComponent, AnatomyComponent anatomyComponent) {
+        remapLoadedParts(injuredCirculatoryComponent.partHealths, anatomyComponent);
+        scheduleCirculatoryInjury(entityRef, injuredCirculatoryComponent);
+    }
+
+    /**
+     * Moves the parts of an injury component replicated again as a whole to their layout indices, like on activation.
+     */
+    @ReceiveEvent
+    public void onBoneInjuryChanged(OnChangedComponent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent,
+                                    AnatomyComponent anatomyComponent) {
+        if (injuredBoneComponent.partHealths.loadedPartIds != null) {
+            remapLoadedParts(injuredBoneComponent.partHealths, anatomyComponent);
+            scheduleBoneInjury(entityRef, injuredBoneComponent);
+        }
+    }
+
+    @ReceiveEvent
+    public void onCirculatoryInjuryChanged(OnChangedComponent event, EntityRef entityRef,
+                                           InjuredCirculatoryComponent injuredCirculatoryComponent, AnatomyComponent anatomyComponent) {
+        if (injuredCirculatoryComponent.partHealths.loadedPartIds != null) {
+            remapLoadedParts(injuredCirculatoryComponent.partHealths, anatomyComponent);
+            scheduleCirculatoryInjury(entityRef, injuredCirculatoryComponent);
+        }
+    }
+
+    /**
+     * Moves the parts of the local copies to their indices in the new layout when the anatomy definition of the entity
+     * is reloaded, and schedules their thresholds again.
+     */
+    @ReceiveEvent
+    public void onBoneLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        if (hasDetail(injuredBoneComponent.partHealths)) {
+            injuredBoneComponent.partHealths.remapParts(event.getPreviousLayout(), event.getLayout());
+            scheduleBoneInjury(entityRef, injuredBoneComponent);
+        }
+    }
+
+    @ReceiveEvent
+    public void onCirculatoryLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef,
+                                           InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        if (hasDetail(injuredCirculatoryComponent.partHealths)) {
+            injuredCirculatoryComponent.partHealths.remapParts(event.getPreviousLayout(), event.getLayout());
+            scheduleCirculatoryInjury(entityRef, injuredCirculatoryComponent);
+        }
+    }
+
+    /**
+     * Moves the parts of a replicated table to their layout indices. The tables of the entities whose injury details
+     * aren't replicated to this client stay empty.
+     */
+    private void remapLoadedParts(PartHealthTable partHealths, AnatomyComponent anatomyComponent) {
+        if (partHealths.loadedPartIds != null) {
+            partHealths.remapLoadedParts(layoutRegistry.getLayout(anatomyComponent));
+        }
+    }
+
+    private void scheduleBoneInjury(EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        PartHealthTable partHealths = injuredBoneComponent.partHealths;
+        injuredBoneComponent.nextThresholdTime = partHealths.scheduleThresholds(clock.getGameTimeInMs(), SkeletalSystem.SEVERITY_THRESHOLDS);
+        for (int part = 0; part < partHealths.size(); part++) {
+            markPartChanged(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part);
+        }
+    }
+
+    private void scheduleCirculatoryInjury(EntityRef entityRef, InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        PartHealthTable partHealths = injuredCirculatoryComponent.partHealths;
+        // Only the part thresholds are scheduled on the client, the blood level has no effect to derive.
+        injuredCirculatoryComponent.nextThresholdTime = partHealths.scheduleThresholds(clock.getGameTimeInMs(),
+                CirculatorySystem.SEVERITY_THRESHOLDS);
+        for (int part = 0; part < partHealths.size(); part++) {
+            markPartChanged(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM, part);
+        }
+    }
+
+    /**
+     * Applies a delta to the local copy in place. The component isn't saved, so that the severities are only derived and
+     * published once, from the {@link AnatomyPartsChangedEvent} of the delta's parts.
+     */
+    @ReceiveEvent
+    public void onBoneHealthDelta(BoneHealthDeltaEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        BitSet appliedParts = injuredBoneComponent.partHealths.applyDelta(ByteBuffer.wrap(event.delta));
+        injuredBoneComponent.nextThresholdTime = reschedule(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM,
+                injuredBoneComponent.partHealths, appliedParts, SkeletalSystem.SEVERITY_THRESHOLDS, clock.getGameTimeInMs());
+    }
+
+    @ReceiveEvent
+    public void onCirculatoryDelta(CirculatoryDeltaEvent event, EntityRef entityRef,
+                                   InjuredCirculatoryComponent injuredCirculatoryComponent) {
+        BitSet appliedParts = injuredCirculatoryComponent.applyDelta(ByteBuffer.wrap(event.delta));
+        injuredCirculatoryComponent.nextThresholdTime = reschedule(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM,
+                injuredCirculatoryComponent.partHealths, appliedParts, CirculatorySystem.SEVERITY_THRESHOLDS, clock.getGameTimeInMs());
+    }
+
+    /**
+     * Publishes the effects of the summary of an entity whose injury details aren't replicated to this client.
+     */
+    @ReceiveEvent
+    public void onSummaryActivated(OnActivatedComponent event, EntityRef entityRef, AnatomySummaryComponent summary) {
+        publishSummary(entityRef, summary);
+    }
+
+    @ReceiveEvent
+    public void onSummaryChanged(OnChangedComponent event, EntityRef entityRef, AnatomySummaryComponent summary) {
+        publishSummary(entityRef, summary);
+    }
+
+    @ReceiveEvent(components = AnatomySummaryComponent.class)
+    public void onSummaryDeactivated(BeforeDeactivateComponent event, EntityRef entityRef) {
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (!hasDetail(injuredBoneComponent == null ? null : injuredBoneComponent.partHealths)) {
+            statusPublisher.clearEffects(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM);
+        }
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (!hasDetail(injuredCirculatoryComponent == null ? null : injuredCirculatoryComponent.partHealths)) {
+            statusPublisher.clearEffects(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM);
+        }
+    }
+
+    private void publishSummary(EntityRef entityRef, AnatomySummaryComponent summary) {
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (!hasDetail(injuredBoneComponent == null ? null : injuredBoneComponent.partHealths)) {
+            publishSlot(entityRef, summary, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, SkeletalHealthSystem.SKELETAL_SUMMARY_SLOT,
+                    SkeletalSystem.SEVERITY_EFFECTS);
+        }
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (!hasDetail(injuredCirculatoryComponent == null ? null : injuredCirculatoryComponent.partHealths)) {
+            publishSlot(entityRef, summary, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM,
+                    CirculatoryHealthSystem.CIRCULATORY_SUMMARY_SLOT, CirculatorySystem.SEVERITY_EFFECTS);
+        }
+    }
+
+    private void publishSlot(EntityRef entityRef, AnatomySummaryComponent summary, String subsystem, int slot,
+                             AnatomyEffect[] severityEffects) {
+        for (int part = 0; part < summary.partSeverities.length; part++) {
+            statusPublisher.setEffect(entityRef, subsystem, part, severityEffects[summary.getSeverity(part, slot)]);
+        }
+    }
+
+    /**
+     * @return Whether the injury details of a sub-system are replicated to this client, which is the owner of the entity.
+     */
+    private boolean hasDetail(PartHealthTable partHealths) {
+        return partHealths != null && partHealths.size() > 0;
+    }
+
+    /**
+     * Marks the parts whose health has regenerated past their next threshold as changed, and schedules their next one.
+     *
+     * @return The earliest next threshold time of the parts.
+     */
+    private long extrapolate(EntityRef entityRef, String subsystem, PartHealthTable partHealths, float[] thresholds, long gameTime) {
+        ensureScheduled(partHealths, thresholds, gameTime);
+        BitSet crossedParts = new BitSet();
+        for (int part = 0; part < partHealths.size(); part++) {
+            if (gameTime >= partHealths.nextThresholdTime[part]) {
+                crossedParts.set(part);
+            }
+        }
+        return reschedule(entityRef, subsystem, partHealths, crossedParts, thresholds, gameTime);
+    }
+
+    /**
+     * Marks parts as changed and schedules their next threshold.
+     *
+     * @return The earliest next threshold time of the parts.
+     */
+    private long reschedule(EntityRef entityRef, String subsystem, PartHealthTable partHealths, BitSet parts, float[] thresholds,
+                            long gameTime) {
+        ensureScheduled(partHealths, thresholds, gameTime);
+        for (int part = parts.nextSetBit(0); part >= 0; part = parts.nextSetBit(part + 1)) {
+            partHealths.nextThresholdTime[part] = partHealths.getNextThresholdTime(part, gameTime, thresholds);
+            markPartChanged(entityRef, subsystem, part);
+        }
+        return partHealths.getEarliestThresholdTime();
+    }
+
+    private void markPartChanged(EntityRef entityRef, String subsystem, int part) {
+        changedEntities.computeIfAbsent(entityRef, key -> new HashMap<>())
+                .computeIfAbsent(subsystem, key -> new BitSet())
+                .set(part);
+    }
+
+    /**
+     * Sends an {@link AnatomyPartsChangedEvent} to each entity with parts changed since the last call.
+     */
+    private void sendChanges() {
+        if (changedEntities.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<EntityRef, Map<String, BitSet>>> entities = new ArrayList<>(changedEntities.entrySet());
+        changedEntities.clear();
+        for (Map.Entry<EntityRef, Map<String, BitSet>> entry : entities) {
+            if (entry.getKey().exists()) {
+                entry.getKey().send(new AnatomyPartsChangedEvent(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Schedules the thresholds of all the parts if the table was replaced by the normal component replication since
+     * they were scheduled.
+     */
+    private void ensureScheduled(PartHealthTable partHealths, float[] thresholds, long gameTime) {
+        if (partHealths.nextThresholdTime.length != partHealths.size()) {
+            partHealths.scheduleThresholds(gameTime, thresholds);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomyCirculation.event.CirculatoryDeltaEvent;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.AnatomySkeleton.event.BoneHealthDeltaEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
+import org.terasology.engine.monitoring.Activity;
+import org.terasology.engine.monitoring.PerformanceMonitor;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Flushes the entities marked as changed once per tick. An {@link AnatomyPartsChangedEvent} with all the parts changed
+ * during the tick, if any, is sent to each entity, so its handlers run once per batch. Then the parts of each injury
+ * component changed during the tick are sent to the owner in a single compact delta event, instead of saving the whole
+ * component for every change. Clients which start to see an entity receive its full, current state through the normal
+ * component replication.
+ * <p>
+ * Only the authority tracks changes, as clients get the injury state from replication. The
+ * {@link AnatomyReplicationClientSystem} notifies the changes it applies on the clients.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(AnatomyChangeTracker.class)
+public class AnatomyReplicationSystem extends BaseComponentSystem implements AnatomyChangeTracker, UpdateSubscriberSystem {
+
+    @In
+    private AnatomyMetrics metrics;
+
+    /**
+     * The indices of the changed parts of each changed entity, mapped by sub-system name.
+     */
+    private Map<EntityRef, Map<String, BitSet>> changedEntities = new HashMap<>();
+    private Map<EntityRef, Map<String, BitSet>> flushingEntities = new HashMap<>();
+
+    @Override
+    public void markChanged(EntityRef entityRef) {
+        changedEntities.computeIfAbsent(entityRef, key -> new HashMap<>());
+    }
+
+    @Override
+    public void markPartChanged(EntityRef entityRef, String subsystem, int part) {
+        changedEntities.computeIfAbsent(entityRef, key -> new HashMap<>())
+                .computeIfAbsent(subsystem, key -> new BitSet())
+                .set(part);
+    }
+
+    @Override
+    public void update(float delta) {
+        flush();
+    }
+
+    @Override
+    public void flush() {
+        if (changedEntities.isEmpty()) {
+            return;
+        }
+        // Swap the maps, so that entities marked while flushing are flushed in the next tick.
+        Map<EntityRef, Map<String, BitSet>> entities = changedEntities;
+        changedEntities = flushingEntities;
+        flushingEntities = entities;
+
+        try (Activity ignored = PerformanceMonitor.startActivity("Anatomy change flush")) {
+            for (Map.Entry<EntityRef, Map<String, BitSet>> entry : entities.entrySet()) {
+                if (entry.getKey().exists()) {
+                    flush(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        entities.clear();
+    }
+
+    private void flush(EntityRef entityRef, Map<String, BitSet> changedParts) {
+        // Sent first, so that the changes made by its handlers are written out with the rest.
+        entityRef.send(new AnatomyPartsChangedEvent(changedParts));
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent != null && injuredBoneComponent.partHealths.isDirty()) {
+            ByteBuffer buffer = ByteBuffer.allocate(injuredBoneComponent.partHealths.getDeltaSize());
+            injuredBoneComponent.partHealths.writeDelta(buffer);
+            entityRef.send(new BoneHealthDeltaEvent(buffer.array()));
+            metrics.count(AnatomyMetrics.Counter.COMPONENT_WRITES);
+        }
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent != null
+                && (injuredCirculatoryComponent.bloodDirty || injuredCirculatoryComponent.partHealths.isDirty())) {
+            ByteBuffer buffer = ByteBuffer.allocate(injuredCirculatoryComponent.getDeltaSize());
+            injuredCirculatoryComponent.writeDelta(buffer);
+            entityRef.send(new CirculatoryDeltaEvent(buffer.array()));
+            metrics.count(AnatomyMetrics.Counter.COMPONENT_WRITES);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomyCirculation.event.BloodLevelChangedEvent;
+import org.terasology.anatomy.AnatomyCirculation.event.PartCirculatoryEffectChangedEvent;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.prefab.PrefabManager;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.utilities.random.FastRandom;
+import org.terasology.engine.utilities.random.Random;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs a scale test of the authority anatomy systems: spawns entities with the anatomy of the player prefab, damages
+ * them randomly and simulates their regeneration in an {@link AnatomyClock.Simulation}, recording the tick times, the
+ * number of anatomy events and the heap usage. Only the spawned entities are regenerated and counted, and the game time
+ * of the world is left untouched. It needs no client or network, so it can be run on a headless server.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class AnatomyScaleTestSystem extends BaseComponentSystem {
+    private static final Logger logger = LoggerFactory.getLogger(AnatomyScaleTestSystem.class);
+
+    private static final String TEMPLATE_PREFAB = "engine:player";
+    private static final String[] DAMAGE_TYPES = {"engine:directDamage", "Equipment:bluntDamage", "Equipment:pierceDamage"};
+
+    /**
+     * Simulated seconds between two rounds of damage.
+     */
+    private static final int DAMAGE_INTERVAL = 10;
+
+    /**
+     * Fraction of the entities damaged in each round of damage.
+     */
+    private static final float DAMAGED_FRACTION = 0.1f;
+
+    private static final int MAX_HITS = 5;
+    private static final int MAX_DAMAGE = 40;
+    private static final long BYTES_PER_MB = 1024 * 1024;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private PrefabManager prefabManager;
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyRegenSystem regenSystem;
+
+    @In
+    private AnatomyDamageManager damageManager;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    private final Random random = new FastRandom();
+
+    /**
+     * The entities spawned by the running scale test, whose events are counted.
+     */
+    private final Set<EntityRef> testEntities = new HashSet<>();
+
+    private long partsChangedEvents;
+    private long effectChangedEvents;
+    private long bloodLevelEvents;
+    private long bulkDamageEvents;
+
+    @ReceiveEvent
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (testEntities.contains(entityRef)) {
+            partsChangedEvents++;
+        }
+    }
+
+    @ReceiveEvent
+    public void onEffectChanged(PartCirculatoryEffectChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (testEntities.contains(entityRef)) {
+            effectChangedEvents++;
+        }
+    }
+
+    @ReceiveEvent
+    public void onBloodLevelChanged(BloodLevelChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (testEntities.contains(entityRef)) {
+            bloodLevelEvents++;
+        }
+    }
+
+    @ReceiveEvent
+    public void onBulkDamage(AnatomyPartsImpactedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (testEntities.contains(entityRef)) {
+            bulkDamageEvents++;
+        }
+    }
+
+    /**
+     * Console command - Runs a scale test of the anatomy systems.
+     */
+    @Command(shortDescription = "Scale test the anatomy systems with many injured entities",
+            helpText = "Spawns entities with the player anatomy, damages them randomly and simulates their regeneration. "
+                    + "The simulated time doesn't touch the world's anatomy time.")
+    public String anatomyScaleTest(@CommandParam("entities") int entityCount, @CommandParam("seconds") int simulatedSeconds) {
+        String result = runScaleTest(entityCount, simulatedSeconds);
+        logger.info(result);
+        return result;
+    }
+
+    /**
+     * Runs a scale test of the anatomy systems.
+     *
+     * @param entityCount The number of entities to spawn.
+     * @param simulatedSeconds The number of seconds of game time to simulate, one regen pass per second.
+     * @return A report of the tick times, event counts and heap usage.
+     */
+    public String runScaleTest(int entityCount, int simulatedSeconds) {
+        Prefab template = prefabManager.getPrefab(TEMPLATE_PREFAB);
+        AnatomyComponent templateAnatomy = template != null ? template.getComponent(AnatomyComponent.class) : null;
+        if (templateAnatomy == null || layoutRegistry.getLayout(templateAnatomy).size() == 0) {
+            return "No anatomy found in " + TEMPLATE_PREFAB + ".";
+        }
+        if (entityCount <= 0) {
+            return "The number of entities must be positive.";
+        }
+        Prefab[] damageTypes = new Prefab[DAMAGE_TYPES.length];
+        for (int i = 0; i < DAMAGE_TYPES.length; i++) {
+            damageTypes[i] = prefabManager.getPrefab(DAMAGE_TYPES[i]);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        // Flushed first, so that the pending changes of other entities are handled in the game time of the world.
+        changeTracker.flush();
+        List<EntityRef> entities = new ArrayList<>(entityCount);
+        partsChangedEvents = 0;
+        effectChangedEvents = 0;
+        bloodLevelEvents = 0;
+        bulkDamageEvents = 0;
+        AnatomyTimer tickTimer = new AnatomyTimer();
+        long peakHeap = heapBefore;
+        try (AnatomyClock.Simulation simulation = clock.startSimulation(clock.getGameTimeInMs())) {
+            for (int i = 0; i < entityCount; i++) {
+                AnatomyComponent anatomyComponent = new AnatomyComponent();
+                anatomyComponent.copyFrom(templateAnatomy);
+                entities.add(entityManager.create(anatomyComponent));
+            }
+            testEntities.addAll(entities);
+            int partCount = layoutRegistry.getLayout(entities.get(0).getComponent(AnatomyComponent.class)).size();
+
+            for (int second = 0; second < simulatedSeconds; second++) {
+                long tickStart = System.nanoTime();
+                if (second % DAMAGE_INTERVAL == 0) {
+                    damageRandomly(entities, partCount, damageTypes);
+                }
+                simulation.advance(1000);
+                regenSystem.regenerate(entities, simulation.getGameTimeInMs());
+                changeTracker.flush();
+                tickTimer.stop(tickStart);
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+            }
+
+            int injuredBones = 0;
+            int injuredCirculations = 0;
+            for (EntityRef entity : entities) {
+                if (entity.hasComponent(InjuredBoneComponent.class)) {
+                    injuredBones++;
+                }
+                if (entity.hasComponent(InjuredCirculatoryComponent.class)) {
+                    injuredCirculations++;
+                }
+            }
+            return "Anatomy scale test: " + entityCount + " entities, " + simulatedSeconds + " simulated seconds\n"
+                    + String.format("Tick time: %.3f ms average, %.3f ms max\n",
+                            tickTimer.getAverageTime() / 1e6, tickTimer.getMaxTime() / 1e6)
+                    + "Events: " + bulkDamageEvents + " bulk damage, " + partsChangedEvents + " parts changed, "
+                    + effectChangedEvents + " bleeding changed, " + bloodLevelEvents + " blood depleted\n"
+                    + "Injured at the end: " + injuredBones + " skeletal, " + injuredCirculations + " circulatory\n"
+                    + "Heap: " + heapBefore / BYTES_PER_MB + " MB before, " + peakHeap / BYTES_PER_MB + " MB peak\n";
+        } finally {
+            testEntities.clear();
+            for (EntityRef entity : entities) {
+                entity.destroy();
+            }
+        }
+    }
+
+    private void damageRandomly(List<EntityRef> entities, int partCount, Prefab[] damageTypes) {
+        int damagedCount = (int) (entities.size() * DAMAGED_FRACTION);
+        int hitCount = damagedCount * MAX_HITS;
+        EntityRef[] hitEntities = new EntityRef[hitCount];
+        int[] parts = new int[hitCount];
+        int[] amounts = new int[hitCount];
+        Prefab[] hitDamageTypes = new Prefab[hitCount];
+        int hit = 0;
+        for (int i = 0; i < damagedCount; i++) {
+            EntityRef entity = entities.get(random.nextInt(entities.size()));
+            int hits = 1 + random.nextInt(MAX_HITS);
+            for (int j = 0; j < hits; j++) {
+                hitEntities[hit] = entity;
+                parts[hit] = random.nextInt(partCount);
+                amounts[hit] = 1 + random.nextInt(MAX_DAMAGE);
+                hitDamageTypes[hit] = damageTypes[random.nextInt(damageTypes.length)];
+                hit++;
+            }
+        }
+        damageManager.damageParts(Arrays.copyOf(hitEntities, hit), Arrays.copyOf(parts, hit), Arrays.copyOf(amounts, hit),
+                Arrays.copyOf(hitDamageTypes, hit), EntityRef.NULL);
+    }
+}
@@ -2,19 +2,36 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy;
 
+import org.terasology.anatomy.AnatomyCirculation.CirculatoryHealthSystem;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalHealthSystem;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
 import org.terasology.anatomy.event.AnatomyScreenButtonEvent;
+import org.terasology.anatomy.ui.AnatomyScreenWindow;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.input.cameraTarget.CameraTargetSystem;
 import org.terasology.engine.network.ClientComponent;
 import org.terasology.engine.registry.In;
 import org.terasology.engine.rendering.nui.NUIManager;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 import org.terasology.input.ButtonState;
 
+import java.util.BitSet;
+
 /**
- * This system listens for the AnatomyScreen button press and triggers the nuiManager.
+ * This system listens for the AnatomyScreen button press and triggers the nuiManager. The screen shows the targeted
+ * entity if it has an anatomy, and the player otherwise. While the screen is open, the changes of the shown entity are
+ * forwarded to it.
  */
 @RegisterSystem(RegisterMode.CLIENT)
 public class AnatomyScreenClientSystem extends BaseComponentSystem {
@@ -23,10 +40,100 @@ public class AnatomyScreenClientSystem extends BaseComponentSystem {
     @In
     private NUIManager nuiManager;
 
+    @In
+    private CameraTargetSystem cameraTargetSystem;
+
+    private AnatomyScreenWindow screen;
+
     @ReceiveEvent
     public void showAnatomyScreen(AnatomyScreenButtonEvent event, EntityRef entityRef, ClientComponent clientComponent) {
         if (event.getState() == ButtonState.DOWN) {
-            nuiManager.toggleScreen(ANATOMY_SCREEN);
+            if (nuiManager.isOpen(ANATOMY_SCREEN)) {
+                nuiManager.closeScreen(ANATOMY_SCREEN);
+                return;
+            }
+            screen = nuiManager.pushScreen(ANATOMY_SCREEN, AnatomyScreenWindow.class);
+            EntityRef target = cameraTargetSystem.getTarget();
+            if (screen != null && target.hasComponent(AnatomyComponent.class)) {
+                screen.setTarget(target);
+            }
+        }
+    }
+
+    /**
+     * Updates the changed parts. Runs after the effect severities have been updated for the changes.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        AnatomyScreenWindow shownScreen = getScreenShowing(entityRef);
+        if (shownScreen != null) {
+            BitSet changedParts = new BitSet();
+            for (String subsystem : event.getSubsystems()) {
+                changedParts.or(event.getChangedParts(subsystem));
+            }
+            shownScreen.refreshParts(changedParts);
+        }
+    }
+
+    /**
+     * Shows the new layout when the anatomy definition of the shown entity is reloaded. Runs after the injury state has
+     * been moved to the new layout.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        AnatomyScreenWindow shownScreen = getScreenShowing(entityRef);
+        if (shownScreen != null) {
+            shownScreen.setTarget(entityRef);
+        }
+    }
+
+    /**
+     * Updates all the parts when an injury component is loaded or replaced, like by replication.
+     */
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onBoneInjuryActivated(OnActivatedComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, null);
+    }
+
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onBoneInjuryChanged(OnChangedComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, null);
+    }
+
+    @ReceiveEvent(components = InjuredBoneComponent.class, priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onBoneInjuryDeactivated(BeforeDeactivateComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM);
+    }
+
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onCirculatoryInjuryActivated(OnActivatedComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, null);
+    }
+
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onCirculatoryInjuryChanged(OnChangedComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, null);
+    }
+
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class, priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onCirculatoryInjuryDeactivated(BeforeDeactivateComponent event, EntityRef entityRef) {
+        refreshAllParts(entityRef, CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM);
+    }
+
+    private void refreshAllParts(EntityRef entityRef, String removedSubsystem) {
+        AnatomyScreenWindow shownScreen = getScreenShowing(entityRef);
+        if (shownScreen != null) {
+            shownScreen.refreshAllParts(removedSubsystem);
+        }
+    }
+
+    /**
+     * @return The anatomy screen if it is open and shows the entity, null otherwise.
+     */
+    private AnatomyScreenWindow getScreenShowing(EntityRef entityRef) {
+        if (screen == null || !nuiManager.isOpen(ANATOMY_SCREEN) || !screen.getTarget().equals(entityRef)) {
+            return null;
         }
+        return screen;
     }
 }
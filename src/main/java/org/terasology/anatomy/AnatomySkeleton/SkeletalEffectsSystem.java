@@ -2,20 +2,23 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomySkeleton;
 
-import com.google.common.collect.Lists;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomyMetrics;
 import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
 import org.terasology.anatomy.component.AnatomyComponent;
-import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.characters.AffectJumpForceEvent;
 import org.terasology.engine.logic.characters.GetMaxSpeedEvent;
+import org.terasology.engine.registry.In;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * This system manages the outcomes of the InjuredBone effect on various body parts.
@@ -26,17 +29,15 @@ public class SkeletalEffectsSystem extends BaseComponentSystem {
     private static final String MOBILITY_EFFECT = "mobility";
 
     /**
-     * Stores the health thresholds at which different severities of the effect occur.
+     * Stores the ability percentage which a part still contributes with each severity of the effect.
      */
-    private final Map<String, Float> severityPercentageEffectMap = new HashMap<>();
+    private static final float[] SEVERITY_PERCENTAGE_EFFECTS = {1f, 0.8f, 0.5f, 0.2f};
 
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
 
-    @Override
-    public void initialise() {
-        severityPercentageEffectMap.put("1", 0.8f);
-        severityPercentageEffectMap.put("2", 0.5f);
-        severityPercentageEffectMap.put("3", 0.2f);
-    }
+    @In
+    private AnatomyMetrics metrics;
 
     /**
      * Modifies the max speed based on skeletal effects.
@@ -44,9 +45,9 @@ public class SkeletalEffectsSystem extends BaseComponentSystem {
     @ReceiveEvent
     public void modifySpeed(GetMaxSpeedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
                             InjuredBoneComponent injuredBoneComponent) {
-        List<String> contributingParts = getContributingParts(anatomyComponent, MOBILITY_EFFECT);
-        float multiplier = getMultiplier(injuredBoneComponent, contributingParts);
-        event.multiply(multiplier);
+        long start = metrics.startTimer();
+        event.multiply(getAbilityMultiplier(anatomyComponent, injuredBoneComponent, MOBILITY_EFFECT));
+        metrics.stopTimer("SkeletalEffectsSystem.modifySpeed", start);
     }
 
     /**
@@ -55,48 +56,89 @@ public class SkeletalEffectsSystem extends BaseComponentSystem {
     @ReceiveEvent
     public void modifyJumpSpeed(AffectJumpForceEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
                                 InjuredBoneComponent injuredBoneComponent) {
-        List<String> contributingParts = getContributingParts(anatomyComponent, MOBILITY_EFFECT);
-        float multiplier = getMultiplier(injuredBoneComponent, contributingParts);
-        event.multiply(multiplier);
+        long start = metrics.startTimer();
+        event.multiply(getAbilityMultiplier(anatomyComponent, injuredBoneComponent, MOBILITY_EFFECT));
+        metrics.stopTimer("SkeletalEffectsSystem.modifyJumpSpeed", start);
+    }
+
+    /**
+     * Invalidates the cached ability multipliers when the skeletal health of parts changes.
+     */
+    @ReceiveEvent
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        long start = metrics.startTimer();
+        if (!event.getChangedParts(SkeletalHealthSystem.SKELETAL_SUBSYSTEM).isEmpty()) {
+            Arrays.fill(injuredBoneComponent.abilityMultipliers, Float.NaN);
+        }
+        metrics.stopTimer("SkeletalEffectsSystem.onPartsChanged", start);
+    }
+
+    /**
+     * Invalidates the cached ability multipliers when the anatomy changes, or when the skeletal effects are replicated.
+     */
+    @ReceiveEvent
+    public void onAnatomyChanged(OnChangedComponent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
+                                 InjuredBoneComponent injuredBoneComponent) {
+        long start = metrics.startTimer();
+        injuredBoneComponent.abilityLayout = null;
+        metrics.stopTimer("SkeletalEffectsSystem.onAnatomyChanged", start);
+    }
+
+    /**
+     * Clears the cached ability multipliers when the anatomy definition of the entity is reloaded, as the abilities may
+     * have different indices in the new layout.
+     */
+    @ReceiveEvent
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        injuredBoneComponent.abilityMultipliers = new float[0];
+        injuredBoneComponent.abilityLayout = null;
     }
 
     /**
-     * Returns the list of anatomy parts contributing to the specific characteristic.
+     * Returns the multiplier for an ability, computing and caching it if it isn't cached yet. The cache is indexed by
+     * the abilities of the layout, and reset when the layout of the entity is replaced.
      *
-     * @param effectID The characteristic to get contributing parts for.
-     * @return List of anatomy parts
+     * @param abilityID The ability to get the multiplier for.
+     * @return Multiplier for the ability.
      */
-    private List<String> getContributingParts(AnatomyComponent anatomyComponent, String effectID) {
-        List<String> contributingParts = Lists.newArrayList();
-        for (Map.Entry<String, AnatomyPartTag> anatomyPartTagEntry : anatomyComponent.parts.entrySet()) {
-            if (anatomyPartTagEntry.getValue().abilities.contains(effectID)) {
-                contributingParts.add(anatomyPartTagEntry.getKey());
-            }
+    private float getAbilityMultiplier(AnatomyComponent anatomyComponent, InjuredBoneComponent injuredBoneComponent,
+                                       String abilityID) {
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        int ability = layout.getAbilityIndex(abilityID);
+        if (ability < 0) {
+            return 1f;
+        }
+        if (injuredBoneComponent.abilityLayout != layout) {
+            injuredBoneComponent.abilityMultipliers = new float[layout.getAbilityCount()];
+            Arrays.fill(injuredBoneComponent.abilityMultipliers, Float.NaN);
+            injuredBoneComponent.abilityLayout = layout;
+        }
+        float multiplier = injuredBoneComponent.abilityMultipliers[ability];
+        if (Float.isNaN(multiplier)) {
+            multiplier = getMultiplier(injuredBoneComponent, layout.getContributingParts(ability));
+            injuredBoneComponent.abilityMultipliers[ability] = multiplier;
         }
-        return contributingParts;
+        return multiplier;
     }
 
     /**
      * Returns the multiplier to be applied based on the severity of effects on the contributing parts.
      *
-     * @param contributingParts List of parts contributing to the ability for which the multiplier is to be calculated.
+     * @param contributingParts Indices of the parts contributing to the ability for which the multiplier is to be calculated.
      * @return Multiplier for the ability.
      */
-    private float getMultiplier(InjuredBoneComponent injuredBoneComponent, List<String> contributingParts) {
-        int numContributingParts = contributingParts.size();
-        int numAffectedContributingParts = 0;
+    private float getMultiplier(InjuredBoneComponent injuredBoneComponent, int[] contributingParts) {
+        int numContributingParts = contributingParts.length;
+        if (numContributingParts == 0) {
+            return 1f;
+        }
+        byte[] severities = injuredBoneComponent.partHealths.severity;
         float multiplier = 0f;
-        for (Map.Entry<String, List<String>> injuredBoneEntry : injuredBoneComponent.parts.entrySet()) {
-            for (String injuredBonePart : injuredBoneEntry.getValue()) {
-                if (contributingParts.contains(injuredBonePart)) {
-                    numAffectedContributingParts += 1;
-                    // Add contribution of injured parts based on severity
-                    multiplier += severityPercentageEffectMap.get(injuredBoneEntry.getKey()) / numContributingParts;
-                }
-            }
+        for (int part : contributingParts) {
+            // Add contribution of each part based on its severity, unaffected parts contribute fully.
+            int severity = part < severities.length ? severities[part] : 0;
+            multiplier += SEVERITY_PERCENTAGE_EFFECTS[severity] / numContributingParts;
         }
-        // Add contributions for parts which aren't injured
-        multiplier += 1 - ((float) numAffectedContributingParts / numContributingParts);
         return multiplier;
     }
 }
@@ -2,94 +2,237 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomySkeleton;
 
+import org.terasology.anatomy.AnatomyChangeTracker;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyDamageTypeRegistry;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomyMetrics;
 import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
-import org.terasology.anatomy.AnatomySkeleton.event.BoneHealthChangedEvent;
+import org.terasology.anatomy.AnatomySubsystem;
+import org.terasology.anatomy.AnatomySubsystemRegistry;
+import org.terasology.anatomy.AnatomyTracing;
 import org.terasology.anatomy.component.AnatomyComponent;
-import org.terasology.anatomy.component.PartHealthDetails;
-import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
-import org.terasology.engine.core.Time;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
+import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
-import org.terasology.engine.logic.delay.DelayManager;
-import org.terasology.engine.logic.delay.DelayedActionTriggeredEvent;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
-import org.terasology.math.TeraMath;
 
 /**
  * This authority system manages the Skeletal system health updates.
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class SkeletalHealthSystem extends BaseComponentSystem {
+@Share(SkeletalHealthSystem.class)
+public class SkeletalHealthSystem extends BaseComponentSystem implements AnatomySubsystem {
+
+    /**
+     * Name of the sub-system, used to look up its damage multipliers.
+     */
+    public static final String SKELETAL_SUBSYSTEM = "Skeletal";
+
+    /**
+     * Slot of the sub-system in the {@link org.terasology.anatomy.component.AnatomySummaryComponent}.
+     */
+    public static final int SKELETAL_SUMMARY_SLOT = 0;
 
-    private static final String SKELETAL_REGEN_PREFIX = "Skeletal:Regen:";
     private static final String BONE_CHARACTERISTIC = "bone";
 
     @In
-    private Time time;
+    private AnatomyClock clock;
 
     @In
     private EntityManager entityManager;
 
     @In
-    private DelayManager delayManager;
+    private AnatomyLayoutRegistry layoutRegistry;
 
-    private final float bluntDamageMultiplier = 1.5f;
+    @In
+    private AnatomyMetrics metrics;
 
-    @ReceiveEvent
-    public void onRegen(DelayedActionTriggeredEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
-        if (event.getActionId().startsWith(SKELETAL_REGEN_PREFIX)) {
-            String partID = event.getActionId().substring(SKELETAL_REGEN_PREFIX.length());
-            PartHealthDetails partDetails = injuredBoneComponent.partHealths.get(partID);
-            if (partDetails.health >= 0 && partDetails.health != partDetails.maxHealth && partDetails.regenRate != 0) {
-                int healAmount = 0;
-                healAmount = regenerateHealth(partDetails, healAmount);
-                partDetails.health += healAmount;
-                partDetails.health = TeraMath.clamp(partDetails.health, 0, partDetails.maxHealth);
-                entityRef.saveComponent(injuredBoneComponent);
-                entityRef.send(new BoneHealthChangedEvent(partID));
+    @In
+    private AnatomyDamageTypeRegistry damageTypeRegistry;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyTracing tracing;
+
+    @In
+    private AnatomySubsystemRegistry subsystemRegistry;
+
+    /**
+     * The mask of the characteristics of the parts handled by this sub-system.
+     */
+    private long characteristicMask;
+
+    @Override
+    public void initialise() {
+        damageTypeRegistry.registerDefault("Equipment:bluntDamage", SKELETAL_SUBSYSTEM, 1.5f);
+        characteristicMask = subsystemRegistry.register(SKELETAL_SUBSYSTEM, this, BONE_CHARACTERISTIC);
+    }
+
+    /**
+     * Marks the parts of an entity whose skeletal health has regenerated past a severity threshold as changed. Called by the
+     * {@link org.terasology.anatomy.AnatomyRegenSystem} once the {@link InjuredBoneComponent#nextThresholdTime} is reached.
+     *
+     * @param gameTime The current game time in ms.
+     */
+    public void regenerate(EntityRef entityRef, InjuredBoneComponent injuredBoneComponent, long gameTime) {
+        PartHealthTable partHealths = injuredBoneComponent.partHealths;
+        long nextThresholdTime = Long.MAX_VALUE;
+        for (int part = 0; part < partHealths.size(); part++) {
+            if (gameTime >= partHealths.nextThresholdTime[part]) {
+                partHealths.nextThresholdTime[part] = partHealths.getNextThresholdTime(part, gameTime, SkeletalSystem.SEVERITY_THRESHOLDS);
+                changeTracker.markPartChanged(entityRef, SKELETAL_SUBSYSTEM, part);
+                metrics.count(AnatomyMetrics.Counter.REGEN_ACTIONS);
             }
-            delayManager.addDelayedAction(entityRef, SKELETAL_REGEN_PREFIX + partID, (long) (1000 / partDetails.regenRate));
+            nextThresholdTime = Math.min(nextThresholdTime, partHealths.nextThresholdTime[part]);
         }
+        injuredBoneComponent.nextThresholdTime = nextThresholdTime;
     }
 
+    /**
+     * Derives the state which isn't persisted when the injured bone component is loaded. The parts of the loaded table
+     * are moved to their layout indices, the thresholds are scheduled, and the injured parts are marked as changed so
+     * that their severities are derived again.
+     */
     @ReceiveEvent
-    public void onBoneDamage(AnatomyPartImpactedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
-        if (anatomyComponent.parts.get(event.getTargetPart().id).characteristics.contains(BONE_CHARACTERISTIC)) {
-            InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
-            if (injuredBoneComponent == null) {
-                injuredBoneComponent = new InjuredBoneComponent();
-                entityRef.addComponent(injuredBoneComponent);
-            }
-            PartHealthDetails partHealthDetails = injuredBoneComponent.partHealths.get(event.getTargetPart().id);
-            if (partHealthDetails == null) {
-                partHealthDetails = new PartHealthDetails();
-                injuredBoneComponent.partHealths.put(event.getTargetPart().id, partHealthDetails);
-                // Part has been injured for the first time, so add delayed regen event.
-                delayManager.addDelayedAction(entityRef, SKELETAL_REGEN_PREFIX + event.getTargetPart().id,
-                        (long) (1000 / partHealthDetails.regenRate));
+    public void onInjuryActivated(OnActivatedComponent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent,
+                                  AnatomyComponent anatomyComponent) {
+        long start = metrics.startTimer();
+        PartHealthTable partHealths = injuredBoneComponent.partHealths;
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        if (partHealths.loadedPartIds != null) {
+            partHealths.remapLoadedParts(layout);
+        } else {
+            partHealths.bindLayout(layout);
+        }
+        deriveState(entityRef, injuredBoneComponent);
+        metrics.stopTimer("SkeletalHealthSystem.onInjuryActivated", start);
+    }
+
+    /**
+     * Moves the parts to their indices in the new layout when the anatomy definition of the entity is reloaded, and
+     * derives their state again like for a loaded component.
+     */
+    @ReceiveEvent
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        long start = metrics.startTimer();
+        injuredBoneComponent.partHealths.remapParts(event.getPreviousLayout(), event.getLayout());
+        deriveState(entityRef, injuredBoneComponent);
+        metrics.stopTimer("SkeletalHealthSystem.onLayoutChanged", start);
+    }
+
+    /**
+     * Schedules the thresholds of the parts, and marks the injured parts as changed so that their severities are
+     * derived again.
+     */
+    private void deriveState(EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        PartHealthTable partHealths = injuredBoneComponent.partHealths;
+        long gameTime = clock.getGameTimeInMs();
+        injuredBoneComponent.nextThresholdTime = partHealths.scheduleThresholds(gameTime, SkeletalSystem.SEVERITY_THRESHOLDS);
+        for (int part = 0; part < partHealths.size(); part++) {
+            if (partHealths.getHealth(part, gameTime) < partHealths.maxHealth[part]) {
+                changeTracker.markPartChanged(entityRef, SKELETAL_SUBSYSTEM, part);
             }
-            int damageAmount = event.getAmount();
-            if (event.getDamageType().getName().equals("Equipment:bluntDamage")) {
-                damageAmount *= bluntDamageMultiplier;
+        }
+    }
+
+    /**
+     * Removes the injured bone component once all the parts are healed. Runs after the effect severities have been
+     * updated for the changes.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        long start = metrics.startTimer();
+        if (injuredBoneComponent.partHealths.isHealed(clock.getGameTimeInMs())) {
+            entityRef.removeComponent(InjuredBoneComponent.class);
+        }
+        metrics.stopTimer("SkeletalHealthSystem.onPartsChanged", start);
+    }
+
+    @Override
+    public void onPartImpacted(EntityRef entityRef, AnatomyLayout layout, int part, int amount, Prefab damageType) {
+        long start = metrics.startTimer();
+        InjuredBoneComponent injuredBoneComponent = getInjuredBoneComponent(entityRef, layout);
+        damagePart(entityRef, injuredBoneComponent, part, amount, damageType, clock.getGameTimeInMs());
+        metrics.stopTimer("SkeletalHealthSystem.onPartImpacted", start);
+    }
+
+    /**
+     * Applies all the hits on an entity from the {@link org.terasology.anatomy.AnatomyDamageManager} in one pass.
+     */
+    @Override
+    public void onPartsImpacted(EntityRef entityRef, AnatomyLayout layout, AnatomyPartsImpactedEvent event) {
+        long start = metrics.startTimer();
+        InjuredBoneComponent injuredBoneComponent = null;
+        long gameTime = clock.getGameTimeInMs();
+        for (int hit = 0; hit < event.size(); hit++) {
+            int part = event.getPart(hit);
+            if (layout.hasCharacteristics(part, characteristicMask)) {
+                if (injuredBoneComponent == null) {
+                    injuredBoneComponent = getInjuredBoneComponent(entityRef, layout);
+                }
+                damagePart(entityRef, injuredBoneComponent, part, event.getAmount(hit), event.getDamageType(hit), gameTime);
             }
-            partHealthDetails.health -= damageAmount;
-            partHealthDetails.health = TeraMath.clamp(partHealthDetails.health, 0, partHealthDetails.maxHealth);
-            partHealthDetails.nextRegenTick = time.getGameTimeInMs() + TeraMath.floorToInt(partHealthDetails.waitBeforeRegen * 1000);
-            entityRef.saveComponent(injuredBoneComponent);
-            entityRef.send(new BoneHealthChangedEvent(event.getTargetPart().id));
         }
+        metrics.stopTimer("SkeletalHealthSystem.onPartsImpacted", start);
+    }
+
+    @Override
+    public void healPart(EntityRef entityRef, int part) {
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent != null && part < injuredBoneComponent.partHealths.size()) {
+            injuredBoneComponent.partHealths.heal(part);
+            changeTracker.markPartChanged(entityRef, SKELETAL_SUBSYSTEM, part);
+        }
+    }
+
+    @Override
+    public void healAll(EntityRef entityRef) {
+        if (entityRef.hasComponent(InjuredBoneComponent.class)) {
+            entityRef.removeComponent(InjuredBoneComponent.class);
+        }
+    }
+
+    /**
+     * Gets the injured bone component of an entity, adding it if the entity isn't injured yet, sized for its layout.
+     */
+    private InjuredBoneComponent getInjuredBoneComponent(EntityRef entityRef, AnatomyLayout layout) {
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent == null) {
+            injuredBoneComponent = new InjuredBoneComponent();
+            entityRef.addComponent(injuredBoneComponent);
+            metrics.count(AnatomyMetrics.Counter.COMPONENT_WRITES);
+        }
+        injuredBoneComponent.partHealths.bindLayout(layout);
+        return injuredBoneComponent;
     }
 
-    private int regenerateHealth(PartHealthDetails partDetails, int healAmount) {
-        int newHeal = healAmount;
-        while (time.getGameTimeInMs() >= partDetails.nextRegenTick) {
-            newHeal++;
-            partDetails.nextRegenTick = partDetails.nextRegenTick + (long) (1000 / partDetails.regenRate);
+    private void damagePart(EntityRef entityRef, InjuredBoneComponent injuredBoneComponent, int part, int amount,
+                            Prefab damageType, long gameTime) {
+        long start = tracing.isEnabled() ? System.nanoTime() : 0;
+        PartHealthTable partHealths = injuredBoneComponent.partHealths;
+        int damageAmount = (int) (amount * damageTypeRegistry.getMultiplier(damageType, SKELETAL_SUBSYSTEM));
+        partHealths.damage(part, damageAmount, gameTime);
+        partHealths.nextThresholdTime[part] = partHealths.getNextThresholdTime(part, gameTime, SkeletalSystem.SEVERITY_THRESHOLDS);
+        injuredBoneComponent.nextThresholdTime = Math.min(injuredBoneComponent.nextThresholdTime,
+                partHealths.nextThresholdTime[part]);
+        changeTracker.markPartChanged(entityRef, SKELETAL_SUBSYSTEM, part);
+        if (tracing.isEnabled()) {
+            tracing.getListener().onPartDamaged(entityRef, SKELETAL_SUBSYSTEM, part, damageAmount, System.nanoTime() - start);
         }
-        return newHeal;
     }
 }
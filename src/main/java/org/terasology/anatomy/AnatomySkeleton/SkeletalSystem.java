@@ -2,24 +2,34 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomySkeleton;
 
-import com.google.common.collect.Lists;
+import org.terasology.anatomy.AnatomyChangeTracker;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyEffect;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomyMetrics;
 import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
-import org.terasology.anatomy.AnatomySkeleton.event.BoneHealthChangedEvent;
+import org.terasology.anatomy.AnatomyStatusPublisher;
+import org.terasology.anatomy.AnatomyTracing;
 import org.terasology.anatomy.component.AnatomyComponent;
-import org.terasology.anatomy.component.PartHealthDetails;
-import org.terasology.anatomy.event.AnatomyStatusGatheringEvent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnChangedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.console.commandSystem.annotations.Command;
 import org.terasology.engine.logic.console.commandSystem.annotations.Sender;
 import org.terasology.engine.logic.players.event.OnPlayerRespawnedEvent;
 import org.terasology.engine.network.ClientComponent;
+import org.terasology.engine.registry.In;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.BitSet;
 
 /**
  * A skeletal system which works with Anatomy. Provides a basic bone breaking effect with 3 levels of severity.
@@ -32,84 +42,94 @@ public class SkeletalSystem extends BaseComponentSystem {
     private static final float SHATTERED_BONE_THRESHOLD = 0.2f;
 
     /**
-     * Maps each effect severity to its display name.
+     * Health fractions at which the severity of the skeletal effect changes.
      */
-    private final Map<Integer, String> severityNameMap = new HashMap<>();
+    public static final float[] SEVERITY_THRESHOLDS = {DAMAGED_BONE_THRESHOLD, BROKEN_BONE_THRESHOLD, SHATTERED_BONE_THRESHOLD};
 
-    @Override
-    public void initialise() {
-        severityNameMap.put(1, "Damaged bone");
-        severityNameMap.put(2, "Broken bone");
-        severityNameMap.put(3, "Shattered bone");
-    }
+    public static final AnatomyEffect DAMAGED_BONE = new AnatomyEffect(SkeletalHealthSystem.SKELETAL_SUBSYSTEM, 1, "Damaged bone");
+    public static final AnatomyEffect BROKEN_BONE = new AnatomyEffect(SkeletalHealthSystem.SKELETAL_SUBSYSTEM, 2, "Broken bone");
+    public static final AnatomyEffect SHATTERED_BONE = new AnatomyEffect(SkeletalHealthSystem.SKELETAL_SUBSYSTEM, 3, "Shattered bone");
 
     /**
-     * Applies or removes effects based on severity when a part's skeletal health changes.
+     * Maps each effect severity to its effect.
      */
-    @ReceiveEvent
-    public void onBoneHealthChanged(BoneHealthChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
-                                    InjuredBoneComponent injuredBoneComponent) {
-        int severity = getEffectSeverity(event.partId, injuredBoneComponent);
-        if (severity == 0) {
-            removeEffect(entityRef, event.partId);
-        } else {
-            applyEffect(entityRef, event.partId, severity);
-        }
-    }
+    public static final AnatomyEffect[] SEVERITY_EFFECTS = {null, DAMAGED_BONE, BROKEN_BONE, SHATTERED_BONE};
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyMetrics metrics;
+
+    @In
+    private AnatomyTracing tracing;
+
+    @In
+    private AnatomyStatusPublisher statusPublisher;
 
     /**
-     * Adds part skeletal statuses to the {@link AnatomyStatusGatheringEvent}.
+     * Applies or removes effects based on severity when the skeletal health of parts changes.
      */
     @ReceiveEvent
-    public void onGather(AnatomyStatusGatheringEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
-        if (event.getSystemFilter().equals("") || event.getSystemFilter().equals("Skeletal")) {
-            for (Map.Entry<String, List<String>> injuredBoneEffect : injuredBoneComponent.parts.entrySet()) {
-                for (String part : injuredBoneEffect.getValue()) {
-                    event.addEffect(part, severityNameMap.get(Integer.parseInt(injuredBoneEffect.getKey())));
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent,
+                               InjuredBoneComponent injuredBoneComponent) {
+        BitSet changedParts = event.getChangedParts(SkeletalHealthSystem.SKELETAL_SUBSYSTEM);
+        for (int part = changedParts.nextSetBit(0); part >= 0; part = changedParts.nextSetBit(part + 1)) {
+            int severity = getEffectSeverity(part, injuredBoneComponent);
+            int previousSeverity = injuredBoneComponent.partHealths.setSeverity(part, severity);
+            if (previousSeverity != severity) {
+                metrics.count(AnatomyMetrics.Counter.SEVERITY_TRANSITIONS);
+                if (tracing.isEnabled()) {
+                    tracing.getListener().onSeverityChanged(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part,
+                            previousSeverity, severity);
                 }
             }
+            // Also pushed without a transition, as the severity may have been replicated before the change.
+            statusPublisher.setEffect(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part, SEVERITY_EFFECTS[severity]);
         }
     }
 
     /**
-     * Applies effect of particular severity to an anatomy part.
+     * Pushes the effects on all parts when the injured bone component is loaded or replaced, like by replication.
      */
-    private void applyEffect(EntityRef entityRef, String partId, int severity) {
-        if (entityRef.getComponent(InjuredBoneComponent.class) == null) {
-            entityRef.addComponent(new InjuredBoneComponent());
-        }
-        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
-        for (Map.Entry<String, List<String>> partsOfSeverity : injuredBoneComponent.parts.entrySet()) {
-            // If the part already has a skeletal effect.
-            if (partsOfSeverity.getValue().contains(partId)) {
-                // If the severity matches, return.
-                if (Integer.parseInt(partsOfSeverity.getKey()) == severity) {
-                    return;
-                } else {
-                    // Else, remove the incorrect severity effect.
-                    partsOfSeverity.getValue().remove(partId);
-                }
-            }
-        }
-        // Add the skeletal effect with correct severity.
-        if (injuredBoneComponent.parts.containsKey(String.valueOf(severity))) {
-            injuredBoneComponent.parts.get(String.valueOf(severity)).add(partId);
-        } else {
-            injuredBoneComponent.parts.put(String.valueOf(severity), Lists.newArrayList(partId));
-        }
-        entityRef.saveComponent(injuredBoneComponent);
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onInjuryActivated(OnActivatedComponent event, EntityRef entityRef) {
+        publishEffects(entityRef, entityRef.getComponent(InjuredBoneComponent.class));
+    }
+
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onInjuryChanged(OnChangedComponent event, EntityRef entityRef) {
+        publishEffects(entityRef, entityRef.getComponent(InjuredBoneComponent.class));
     }
 
     /**
-     * Removes the skeletal effect corresponding to an anatomy part.
+     * Removes the effects once the injured bone component is removed or unloaded.
      */
-    private void removeEffect(EntityRef entityRef, String partId) {
-        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
-        if (injuredBoneComponent != null) {
-            for (Map.Entry<String, List<String>> partsOfSeverity : injuredBoneComponent.parts.entrySet()) {
-                partsOfSeverity.getValue().remove(partId);
-            }
-            entityRef.saveComponent(injuredBoneComponent);
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onInjuryDeactivated(BeforeDeactivateComponent event, EntityRef entityRef) {
+        statusPublisher.clearEffects(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM);
+    }
+
+    /**
+     * Publishes the effects again when the anatomy definition of the entity is reloaded, as the effects published so
+     * far are indexed by the parts of the previous layout. Runs after the parts have been moved to the new layout.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        statusPublisher.clearEffects(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM);
+        publishEffects(entityRef, injuredBoneComponent);
+    }
+
+    private void publishEffects(EntityRef entityRef, InjuredBoneComponent injuredBoneComponent) {
+        byte[] severities = injuredBoneComponent.partHealths.severity;
+        for (int part = 0; part < severities.length; part++) {
+            statusPublisher.setEffect(entityRef, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part, SEVERITY_EFFECTS[severities[part]]);
         }
     }
 
@@ -118,9 +138,9 @@ public class SkeletalSystem extends BaseComponentSystem {
      *
      * @return The severity of the skeletal effect to be applied.
      */
-    private int getEffectSeverity(String partId, InjuredBoneComponent injuredBoneComponent) {
-        int maxHealth = injuredBoneComponent.partHealths.get(partId).maxHealth;
-        int health = injuredBoneComponent.partHealths.get(partId).health;
+    private int getEffectSeverity(int partIndex, InjuredBoneComponent injuredBoneComponent) {
+        int maxHealth = injuredBoneComponent.partHealths.maxHealth[partIndex];
+        int health = injuredBoneComponent.partHealths.getHealth(partIndex, clock.getGameTimeInMs());
         float healthPercent = (float) health / maxHealth;
         int severity = 0;
         if (healthPercent > BROKEN_BONE_THRESHOLD && healthPercent <= DAMAGED_BONE_THRESHOLD) {
@@ -147,11 +167,15 @@ public class SkeletalSystem extends BaseComponentSystem {
         InjuredBoneComponent injuredBoneComponent = character.getComponent(InjuredBoneComponent.class);
         String result = "";
         if (injuredBoneComponent != null) {
+            long gameTime = clock.getGameTimeInMs();
             result += "Bone healths :\n";
-            for (Map.Entry<String, PartHealthDetails> partHealthDetailsEntry : injuredBoneComponent.partHealths.entrySet()) {
-                result += partHealthDetailsEntry.getKey()
-                        + " :" + partHealthDetailsEntry.getValue().health
-                        + "/" + partHealthDetailsEntry.getValue().maxHealth + "\n";
+            AnatomyLayout layout = layoutRegistry.getLayout(character.getComponent(AnatomyComponent.class));
+            PartHealthTable partHealths = injuredBoneComponent.partHealths;
+            for (int part = 0; part < partHealths.size(); part++) {
+                int health = partHealths.getHealth(part, gameTime);
+                if (health < partHealths.maxHealth[part]) {
+                    result += layout.getPartId(part) + " :" + health + "/" + partHealths.maxHealth[part] + "\n";
+                }
             }
         } else {
             result += "Skeletal system healthy.\n";
@@ -162,14 +186,17 @@ public class SkeletalSystem extends BaseComponentSystem {
     /**
      * Console command - Heals all parts' skeletal healths to max.
      */
-    @Command(shortDescription = "Heal all bone parts to full health")
+    @Command(shortDescription = "Heal all bone parts to full health", runOnServer = true)
     public String healAllBones(@Sender EntityRef client) {
         EntityRef character = client.getComponent(ClientComponent.class).character;
         InjuredBoneComponent injuredBoneComponent = character.getComponent(InjuredBoneComponent.class);
         if (injuredBoneComponent != null) {
-            for (Map.Entry<String, PartHealthDetails> partHealthDetailsEntry : injuredBoneComponent.partHealths.entrySet()) {
-                partHealthDetailsEntry.getValue().health = partHealthDetailsEntry.getValue().maxHealth;
-                character.send(new BoneHealthChangedEvent(partHealthDetailsEntry.getKey()));
+            for (int part = 0; part < injuredBoneComponent.partHealths.size(); part++) {
+                injuredBoneComponent.partHealths.heal(part);
+                changeTracker.markPartChanged(character, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part);
+                if (tracing.isEnabled()) {
+                    tracing.getListener().onPartHealed(character, SkeletalHealthSystem.SKELETAL_SUBSYSTEM, part);
+                }
             }
         }
         return "Skeletal healths fully restored.";
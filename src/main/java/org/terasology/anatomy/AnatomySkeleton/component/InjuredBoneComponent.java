@@ -2,36 +2,45 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.AnatomySkeleton.component;
 
-import com.google.common.collect.Lists;
-import org.terasology.anatomy.component.PartHealthDetails;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.component.AnatomySummaryComponent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.engine.network.FieldReplicateType;
 import org.terasology.engine.network.Replicate;
 import org.terasology.gestalt.entitysystem.component.Component;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 /**
- * This component contains injured skeletal system details.
+ * This component contains injured skeletal system details. They are only replicated to the owner of the entity, the
+ * other clients get the {@link AnatomySummaryComponent}.
  */
 public class InjuredBoneComponent implements Component<InjuredBoneComponent> {
     /**
-     * Maps each part to its health details.
+     * Health details of each part, indexed by the part indices of the anatomy layout.
+     */
+    @Replicate(FieldReplicateType.SERVER_TO_OWNER)
+    public PartHealthTable partHealths = new PartHealthTable();
+
+    /**
+     * Game time in ms at which the next part crosses a severity threshold. Not persisted or replicated, and derived
+     * again when the component is activated.
+     */
+    public transient long nextThresholdTime = Long.MAX_VALUE;
+
+    /**
+     * Caches the multiplier of each ability affected by the skeletal effects, by ability index of the
+     * {@link #abilityLayout}, NaN if not computed yet. Not persisted or replicated, and cleared whenever the skeletal
+     * health or the anatomy of the entity changes.
      */
-    @Replicate
-    public Map<String, PartHealthDetails> partHealths = new HashMap<>();
+    public transient float[] abilityMultipliers = new float[0];
 
     /**
-     * Maps severity to the list of parts affected.
+     * The layout whose ability indices index the {@link #abilityMultipliers}.
      */
-    @Replicate
-    public Map<String, List<String>> parts = new HashMap<>();
+    public transient AnatomyLayout abilityLayout;
 
     @Override
     public void copyFrom(InjuredBoneComponent other) {
-        this.partHealths.clear();
-        other.partHealths.forEach((k, v) -> this.partHealths.put(k, v.copy()));
-        this.parts.clear();
-        other.parts.forEach((k, v) -> this.parts.put(k, Lists.newArrayList(v)));
+        this.partHealths = other.partHealths.copy();
+        this.nextThresholdTime = other.nextThresholdTime;
     }
 }
@@ -0,0 +1,22 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.AnatomySkeleton.event;
+
+import org.terasology.engine.network.OwnerEvent;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * This event is sent to the owner of the entity with the parts whose skeletal health changed since the last
+ * replication, encoded by {@link org.terasology.anatomy.component.PartHealthTable#writeDelta(java.nio.ByteBuffer)}.
+ */
+@OwnerEvent
+public class BoneHealthDeltaEvent implements Event {
+    public byte[] delta;
+
+    public BoneHealthDeltaEvent() {
+    }
+
+    public BoneHealthDeltaEvent(byte[] delta) {
+        this.delta = delta;
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+/**
+ * Receives the changes of the effects on the parts of entities. Listeners are registered with the
+ * {@link AnatomyStatusService}.
+ */
+public interface AnatomyStatusListener {
+    /**
+     * Called when the effect of a sub-system on a part changes.
+     *
+     * @param entityRef The entity of the part.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @param previousEffect The previous effect on the part, or null if it was unaffected.
+     * @param effect The new effect on the part, or null if it is no longer affected.
+     */
+    void onEffectChanged(EntityRef entityRef, String subsystem, int part, AnatomyEffect previousEffect, AnatomyEffect effect);
+}
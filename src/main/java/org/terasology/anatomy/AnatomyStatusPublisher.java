@@ -0,0 +1,28 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+/**
+ * Used by the sub-systems to push the changes of their effects to the {@link AnatomyStatusService}.
+ */
+public interface AnatomyStatusPublisher {
+    /**
+     * Sets the effect of a sub-system on a part, notifying the listeners if it changed.
+     *
+     * @param entityRef The entity of the part.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @param effect The effect on the part, or null if it isn't affected.
+     */
+    void setEffect(EntityRef entityRef, String subsystem, int part, AnatomyEffect effect);
+
+    /**
+     * Removes all the effects of a sub-system on an entity, like when its injury component is removed.
+     *
+     * @param entityRef The entity.
+     * @param subsystem The name of the sub-system.
+     */
+    void clearEffects(EntityRef entityRef, String subsystem);
+}
@@ -0,0 +1,41 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.List;
+
+/**
+ * Provides the current effects of the sub-systems on the parts of entities. The sub-systems push their effects through
+ * the {@link AnatomyStatusPublisher} as they change, so queries don't involve the sub-systems.
+ */
+public interface AnatomyStatusService {
+    /**
+     * Gets the effect of a sub-system on a part.
+     *
+     * @param entityRef The entity of the part.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @return The effect, or null if the part isn't affected by the sub-system.
+     */
+    AnatomyEffect getEffect(EntityRef entityRef, String subsystem, int part);
+
+    /**
+     * Gets the effects of all the sub-systems on a part.
+     *
+     * @param entityRef The entity of the part.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @return The effects, empty if the part isn't affected.
+     */
+    List<AnatomyEffect> getEffects(EntityRef entityRef, int part);
+
+    /**
+     * @return Whether any part of an entity is affected by any sub-system.
+     */
+    boolean isAffected(EntityRef entityRef);
+
+    void addListener(AnatomyStatusListener listener);
+
+    void removeListener(AnatomyStatusListener listener);
+}
@@ -0,0 +1,132 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.Share;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stores the effects pushed by the sub-systems, as an array of the effects on each part per sub-system and entity.
+ */
+@RegisterSystem
+@Share({AnatomyStatusService.class, AnatomyStatusPublisher.class})
+public class AnatomyStatusSystem extends BaseComponentSystem implements AnatomyStatusService, AnatomyStatusPublisher {
+    private final Map<EntityRef, Map<String, AnatomyEffect[]>> entityEffects = new HashMap<>();
+    private final List<AnatomyStatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public AnatomyEffect getEffect(EntityRef entityRef, String subsystem, int part) {
+        Map<String, AnatomyEffect[]> subsystemEffects = entityEffects.get(entityRef);
+        if (subsystemEffects == null) {
+            return null;
+        }
+        AnatomyEffect[] partEffects = subsystemEffects.get(subsystem);
+        return partEffects != null && part >= 0 && part < partEffects.length ? partEffects[part] : null;
+    }
+
+    @Override
+    public List<AnatomyEffect> getEffects(EntityRef entityRef, int part) {
+        Map<String, AnatomyEffect[]> subsystemEffects = entityEffects.get(entityRef);
+        if (subsystemEffects == null) {
+            return Collections.emptyList();
+        }
+        List<AnatomyEffect> effects = new ArrayList<>();
+        for (AnatomyEffect[] partEffects : subsystemEffects.values()) {
+            if (part >= 0 && part < partEffects.length && partEffects[part] != null) {
+                effects.add(partEffects[part]);
+            }
+        }
+        return effects;
+    }
+
+    @Override
+    public boolean isAffected(EntityRef entityRef) {
+        return entityEffects.containsKey(entityRef);
+    }
+
+    @Override
+    public void addListener(AnatomyStatusListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(AnatomyStatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void setEffect(EntityRef entityRef, String subsystem, int part, AnatomyEffect effect) {
+        Map<String, AnatomyEffect[]> subsystemEffects = entityEffects.get(entityRef);
+        AnatomyEffect[] partEffects = subsystemEffects != null ? subsystemEffects.get(subsystem) : null;
+        AnatomyEffect previousEffect = partEffects != null && part < partEffects.length ? partEffects[part] : null;
+        if (previousEffect == effect) {
+            return;
+        }
+        if (partEffects == null) {
+            partEffects = new AnatomyEffect[part + 1];
+            entityEffects.computeIfAbsent(entityRef, key -> new HashMap<>()).put(subsystem, partEffects);
+        } else if (part >= partEffects.length) {
+            partEffects = Arrays.copyOf(partEffects, part + 1);
+            subsystemEffects.put(subsystem, partEffects);
+        }
+        partEffects[part] = effect;
+        if (effect == null && isEmpty(partEffects)) {
+            removeSubsystem(entityRef, subsystem);
+        }
+        notifyListeners(entityRef, subsystem, part, previousEffect, effect);
+    }
+
+    @Override
+    public void clearEffects(EntityRef entityRef, String subsystem) {
+        AnatomyEffect[] partEffects = removeSubsystem(entityRef, subsystem);
+        if (partEffects != null) {
+            for (int part = 0; part < partEffects.length; part++) {
+                if (partEffects[part] != null) {
+                    notifyListeners(entityRef, subsystem, part, partEffects[part], null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the effects of a sub-system on an entity, and the entity once it has no effects left.
+     *
+     * @return The removed effects, or null if there were none.
+     */
+    private AnatomyEffect[] removeSubsystem(EntityRef entityRef, String subsystem) {
+        Map<String, AnatomyEffect[]> subsystemEffects = entityEffects.get(entityRef);
+        if (subsystemEffects == null) {
+            return null;
+        }
+        AnatomyEffect[] partEffects = subsystemEffects.remove(subsystem);
+        if (subsystemEffects.isEmpty()) {
+            entityEffects.remove(entityRef);
+        }
+        return partEffects;
+    }
+
+    private boolean isEmpty(AnatomyEffect[] partEffects) {
+        for (AnatomyEffect effect : partEffects) {
+            if (effect != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void notifyListeners(EntityRef entityRef, String subsystem, int part, AnatomyEffect previousEffect, AnatomyEffect effect) {
+        for (AnatomyStatusListener listener : listeners) {
+            listener.onEffectChanged(entityRef, subsystem, part, previousEffect, effect);
+        }
+    }
+}
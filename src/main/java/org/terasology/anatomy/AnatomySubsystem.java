@@ -0,0 +1,50 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+
+/**
+ * A sub-system which is routed the hits on the parts with the characteristics it was registered for in the
+ * {@link AnatomySubsystemRegistry}.
+ */
+public interface AnatomySubsystem {
+    /**
+     * Called when a part with one of the characteristics of the sub-system is damaged.
+     *
+     * @param entityRef The entity hit.
+     * @param layout The layout of the entity.
+     * @param part The index of the part hit.
+     * @param amount The amount of damage dealt.
+     * @param damageType The type of damage dealt.
+     */
+    void onPartImpacted(EntityRef entityRef, AnatomyLayout layout, int part, int amount, Prefab damageType);
+
+    /**
+     * Called when several parts of an entity are damaged at once, and at least one of them has one of the
+     * characteristics of the sub-system. The other hits have to be skipped, using
+     * {@link AnatomyLayout#hasCharacteristics(int, long)} with the mask returned by the registration.
+     *
+     * @param entityRef The entity hit.
+     * @param layout The layout of the entity.
+     * @param event The hits on the entity.
+     */
+    void onPartsImpacted(EntityRef entityRef, AnatomyLayout layout, AnatomyPartsImpactedEvent event);
+
+    /**
+     * Restores a part of an entity to full health in the sub-system.
+     *
+     * @param entityRef The entity to heal.
+     * @param part The index of the part to heal.
+     */
+    void healPart(EntityRef entityRef, int part);
+
+    /**
+     * Restores all the parts of an entity to full health in the sub-system, like when a player respawns.
+     *
+     * @param entityRef The entity to heal.
+     */
+    void healAll(EntityRef entityRef);
+}
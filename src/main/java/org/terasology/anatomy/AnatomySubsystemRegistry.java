@@ -0,0 +1,34 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import java.util.Set;
+
+/**
+ * Routes the hits on anatomy parts to the sub-systems handling their characteristics, so that a hit only costs the
+ * sub-systems it concerns.
+ */
+public interface AnatomySubsystemRegistry {
+    /**
+     * Registers a sub-system for the hits on the parts with any of a set of characteristics.
+     *
+     * @param name The name of the sub-system.
+     * @param subsystem The sub-system.
+     * @param characteristics The characteristics handled by the sub-system, like bone or blood.
+     * @return The mask of the characteristics, to be tested with {@link AnatomyLayout#hasCharacteristics(int, long)}.
+     */
+    long register(String name, AnatomySubsystem subsystem, String... characteristics);
+
+    /**
+     * Gets a registered sub-system.
+     *
+     * @param name The name of the sub-system.
+     * @return The sub-system, or null if no sub-system is registered with the name.
+     */
+    AnatomySubsystem getSubsystem(String name);
+
+    /**
+     * @return The names of the registered sub-systems, in the order of their registration.
+     */
+    Set<String> getSubsystemNames();
+}
@@ -0,0 +1,135 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.anatomy.AnatomyCirculation.CirculatoryHealthSystem;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalHealthSystem;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.component.AnatomySummaryComponent;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.anatomy.event.AnatomyLayoutChangedEvent;
+import org.terasology.anatomy.event.AnatomyPartsChangedEvent;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeRemoveComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.In;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.util.BitSet;
+
+/**
+ * This authority system keeps the {@link AnatomySummaryComponent} of the injured entities up to date from their injury
+ * components. The summary is only saved when it changes, so it is replicated at most once per tick and only on severity
+ * or blood bucket transitions.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class AnatomySummarySystem extends BaseComponentSystem {
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyMetrics metrics;
+
+    /**
+     * Updates the summary of the changed parts. Runs after the effect severities have been updated for the changes.
+     */
+    @ReceiveEvent(priority = EventPriority.PRIORITY_TRIVIAL)
+    public void onPartsChanged(AnatomyPartsChangedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        long start = metrics.startTimer();
+        AnatomySummaryComponent summary = entityRef.getComponent(AnatomySummaryComponent.class);
+        boolean added = summary == null;
+        if (added) {
+            summary = new AnatomySummaryComponent();
+        }
+        boolean changed = false;
+        InjuredBoneComponent injuredBoneComponent = entityRef.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent != null) {
+            changed |= updateSlot(summary, SkeletalHealthSystem.SKELETAL_SUMMARY_SLOT, injuredBoneComponent.partHealths,
+                    event.getChangedParts(SkeletalHealthSystem.SKELETAL_SUBSYSTEM));
+        }
+        InjuredCirculatoryComponent injuredCirculatoryComponent = entityRef.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent != null) {
+            changed |= updateSlot(summary, CirculatoryHealthSystem.CIRCULATORY_SUMMARY_SLOT, injuredCirculatoryComponent.partHealths,
+                    event.getChangedParts(CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM));
+            byte bloodLevelBucket = (byte) injuredCirculatoryComponent.getBloodLevelBucket(clock.getGameTimeInMs());
+            if (summary.bloodLevelBucket != bloodLevelBucket) {
+                summary.bloodLevelBucket = bloodLevelBucket;
+                changed = true;
+            }
+        }
+        if (changed) {
+            save(entityRef, summary, added);
+        }
+        metrics.stopTimer("AnatomySummarySystem.onPartsChanged", start);
+    }
+
+    /**
+     * Clears the summary when the anatomy definition of the entity is reloaded, as its part indices refer to the previous
+     * layout. The injury components mark their injured parts as changed, so the summary is filled again at the end of
+     * the tick.
+     */
+    @ReceiveEvent
+    public void onLayoutChanged(AnatomyLayoutChangedEvent event, EntityRef entityRef, AnatomySummaryComponent summary) {
+        boolean changed = summary.clearSlot(SkeletalHealthSystem.SKELETAL_SUMMARY_SLOT);
+        changed |= summary.clearSlot(CirculatoryHealthSystem.CIRCULATORY_SUMMARY_SLOT);
+        if (changed) {
+            save(entityRef, summary, false);
+        }
+    }
+
+    /**
+     * Clears the skeletal effects from the summary once the injured bone component is removed.
+     */
+    @ReceiveEvent(components = InjuredBoneComponent.class)
+    public void onBoneInjuryRemoved(BeforeRemoveComponent event, EntityRef entityRef, AnatomySummaryComponent summary) {
+        if (summary.clearSlot(SkeletalHealthSystem.SKELETAL_SUMMARY_SLOT)) {
+            save(entityRef, summary, false);
+        }
+    }
+
+    /**
+     * Clears the circulatory effects and resets the blood level of the summary once the injured circulatory component
+     * is removed.
+     */
+    @ReceiveEvent(components = InjuredCirculatoryComponent.class)
+    public void onCirculatoryInjuryRemoved(BeforeRemoveComponent event, EntityRef entityRef, AnatomySummaryComponent summary) {
+        boolean changed = summary.clearSlot(CirculatoryHealthSystem.CIRCULATORY_SUMMARY_SLOT);
+        if (summary.bloodLevelBucket != InjuredCirculatoryComponent.BLOOD_LEVEL_BUCKETS) {
+            summary.bloodLevelBucket = InjuredCirculatoryComponent.BLOOD_LEVEL_BUCKETS;
+            changed = true;
+        }
+        if (changed) {
+            save(entityRef, summary, false);
+        }
+    }
+
+    private boolean updateSlot(AnatomySummaryComponent summary, int slot, PartHealthTable partHealths, BitSet changedParts) {
+        boolean changed = false;
+        for (int part = changedParts.nextSetBit(0); part >= 0 && part < partHealths.size(); part = changedParts.nextSetBit(part + 1)) {
+            changed |= summary.setSeverity(part, slot, partHealths.severity[part]);
+        }
+        return changed;
+    }
+
+    /**
+     * Adds or saves the summary, or removes it once there is nothing left to show.
+     */
+    private void save(EntityRef entityRef, AnatomySummaryComponent summary, boolean added) {
+        if (summary.isEmpty()) {
+            if (!added) {
+                entityRef.removeComponent(AnatomySummaryComponent.class);
+            }
+        } else if (added) {
+            entityRef.addComponent(summary);
+        } else {
+            entityRef.saveComponent(summary);
+        }
+        metrics.count(AnatomyMetrics.Counter.COMPONENT_WRITES);
+    }
+}
@@ -2,51 +2,263 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy;
 
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
 import org.terasology.anatomy.component.AnatomyComponent;
 import org.terasology.anatomy.component.AnatomyPartTag;
 import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
-import org.terasology.anatomy.event.AnatomyStatusGatheringEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
+import org.terasology.anatomy.event.DoPositionalDamageEvent;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
 import org.terasology.engine.logic.console.commandSystem.annotations.Command;
 import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
 import org.terasology.engine.logic.console.commandSystem.annotations.Sender;
+import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.network.ClientComponent;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.engine.utilities.random.FastRandom;
 import org.terasology.engine.utilities.random.Random;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.module.health.events.DoDamageEvent;
 import org.terasology.module.health.events.OnDamagedEvent;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Provides a basic system for managing an entity's anatomy.
+ * Provides a basic system for managing an entity's anatomy. Routes the hits on each part only to the sub-systems
+ * registered for its characteristics.
  */
 @RegisterSystem
-public class AnatomySystem extends BaseComponentSystem {
+@Share({AnatomyDamageManager.class, AnatomySubsystemRegistry.class})
+public class AnatomySystem extends BaseComponentSystem implements AnatomyDamageManager, AnatomySubsystemRegistry {
     @In
     private EntityManager entityManager;
 
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    @In
+    private AnatomyMetrics metrics;
+
+    @In
+    private AnatomyStatusService statusService;
+
     private final Random random = new FastRandom();
 
+    /**
+     * The registered sub-systems, with the mask of the characteristics each one handles at the same index.
+     */
+    private final Map<String, Integer> subsystemIndices = new LinkedHashMap<>();
+    private AnatomySubsystem[] subsystems = new AnatomySubsystem[0];
+    private long[] subsystemMasks = new long[0];
+
+    private final Vector3f localHitPoint = new Vector3f();
+    private final Vector3f worldPosition = new Vector3f();
+    private final Quaternionf worldRotation = new Quaternionf();
+
+    /**
+     * The parts hit by the {@link DoPositionalDamageEvent}s passing through the health system, per damaged entity, the
+     * innermost damage last. Each hit is consumed by the first {@link OnDamagedEvent} of its damage, so nested damage
+     * on the same entity resolves its own part.
+     */
+    private final Map<EntityRef, Deque<PendingHit>> pendingHits = new HashMap<>();
+
+    /**
+     * Receives a {@link DoPositionalDamageEvent}, resolves the part at the hit point and deals the damage to the entity.
+     * Entities without a location take the damage on a random part, like any other damage.
+     */
+    @ReceiveEvent
+    public void onPositionalDamage(DoPositionalDamageEvent event, EntityRef entity, AnatomyComponent comp) {
+        DoDamageEvent damageEvent = toDamageEvent(event);
+        LocationComponent location = entity.getComponent(LocationComponent.class);
+        if (location == null) {
+            entity.send(damageEvent);
+            return;
+        }
+        AnatomyLayout layout = layoutRegistry.getLayout(comp);
+        location.getWorldPosition(worldPosition);
+        location.getWorldRotation(worldRotation);
+        event.getHitPoint().sub(worldPosition, localHitPoint);
+        worldRotation.transformInverse(localHitPoint);
+
+        Deque<PendingHit> entityHits = pendingHits.computeIfAbsent(entity, key -> new ArrayDeque<>());
+        entityHits.push(new PendingHit(layout.getPartAt(localHitPoint)));
+        try {
+            entity.send(damageEvent);
+        } finally {
+            entityHits.pop();
+            if (entityHits.isEmpty()) {
+                pendingHits.remove(entity);
+            }
+        }
+    }
+
+    /**
+     * Receives a {@link DoPositionalDamageEvent} sent to an entity without an anatomy and deals the damage to the entity
+     * as a plain {@link DoDamageEvent}.
+     */
+    @ReceiveEvent
+    public void onPositionalDamageWithoutAnatomy(DoPositionalDamageEvent event, EntityRef entity) {
+        if (!entity.hasComponent(AnatomyComponent.class)) {
+            entity.send(toDamageEvent(event));
+        }
+    }
+
+    private DoDamageEvent toDamageEvent(DoPositionalDamageEvent event) {
+        return new DoDamageEvent(event.getAmount(), event.getDamageType(), event.getInstigator(), event.getDirectCause());
+    }
+
     /**
      * Receives an {@link OnDamagedEvent} and allocates the damage to an anatomy part.
      */
     @ReceiveEvent
     public void onDamage(OnDamagedEvent event, EntityRef entity, AnatomyComponent comp) {
-        if (comp != null) {
-            List<String> keys = new ArrayList<>(comp.parts.keySet());
-            // Randomly assign damage to a part, until positional damage is introduced.
-            AnatomyPartTag partTag = comp.parts.get(keys.get(random.nextInt(0, keys.size() - 1)));
+        AnatomyLayout layout = layoutRegistry.getLayout(comp);
+        if (layout.size() > 0) {
+            int partIndex = consumePendingHit(entity);
+            if (partIndex < 0 || partIndex >= layout.size()) {
+                // Damage without a hit point goes to a random part weighted by the hit weights for the damage type.
+                partIndex = layout.getHitTable(event.getType()).sample(random);
+            }
+            AnatomyPartTag partTag = layout.getPart(partIndex);
             entity.send(new AnatomyPartImpactedEvent(event.getDamageAmount(), partTag, event.getType(), event.getInstigator()));
         }
     }
 
+    /**
+     * @return The part hit by the innermost positional damage on the entity not yet consumed, or -1 if there is none.
+     */
+    private int consumePendingHit(EntityRef entity) {
+        Deque<PendingHit> entityHits = pendingHits.get(entity);
+        PendingHit hit = entityHits != null ? entityHits.peek() : null;
+        if (hit == null) {
+            return -1;
+        }
+        int part = hit.part;
+        hit.part = -1;
+        return part;
+    }
+
+    /**
+     * Routes a hit to the sub-systems handling the characteristics of the part.
+     */
+    @ReceiveEvent
+    public void onPartImpacted(AnatomyPartImpactedEvent event, EntityRef entity, AnatomyComponent comp) {
+        AnatomyLayout layout = layoutRegistry.getLayout(comp);
+        int part = layout.getPartIndex(event.getTargetPart().id);
+        if (part < 0) {
+            return;
+        }
+        long characteristicMask = layout.getCharacteristicMask(part);
+        for (int i = 0; i < subsystems.length; i++) {
+            if ((subsystemMasks[i] & characteristicMask) != 0) {
+                subsystems[i].onPartImpacted(entity, layout, part, event.getAmount(), event.getDamageType());
+            }
+        }
+    }
+
+    /**
+     * Routes all the hits on an entity to the sub-systems handling the characteristics of any of the parts hit.
+     */
+    @ReceiveEvent
+    public void onPartsImpacted(AnatomyPartsImpactedEvent event, EntityRef entity, AnatomyComponent comp) {
+        AnatomyLayout layout = layoutRegistry.getLayout(comp);
+        long characteristicMask = 0;
+        for (int hit = 0; hit < event.size(); hit++) {
+            int part = event.getPart(hit);
+            if (part >= 0 && part < layout.size()) {
+                characteristicMask |= layout.getCharacteristicMask(part);
+            }
+        }
+        for (int i = 0; i < subsystems.length; i++) {
+            if ((subsystemMasks[i] & characteristicMask) != 0) {
+                subsystems[i].onPartsImpacted(entity, layout, event);
+            }
+        }
+    }
+
+    @Override
+    public long register(String name, AnatomySubsystem subsystem, String... characteristics) {
+        long characteristicMask = layoutRegistry.getTraits().intern(Arrays.asList(characteristics));
+        Integer index = subsystemIndices.get(name);
+        if (index == null) {
+            index = subsystems.length;
+            subsystemIndices.put(name, index);
+            subsystems = Arrays.copyOf(subsystems, index + 1);
+            subsystemMasks = Arrays.copyOf(subsystemMasks, index + 1);
+        }
+        subsystems[index] = subsystem;
+        subsystemMasks[index] = characteristicMask;
+        return characteristicMask;
+    }
+
+    @Override
+    public AnatomySubsystem getSubsystem(String name) {
+        Integer index = subsystemIndices.get(name);
+        return index != null ? subsystems[index] : null;
+    }
+
+    @Override
+    public Set<String> getSubsystemNames() {
+        return Collections.unmodifiableSet(subsystemIndices.keySet());
+    }
+
+    @Override
+    public void damageParts(EntityRef[] entities, int[] parts, int[] amounts, Prefab[] damageTypes, EntityRef instigator) {
+        // Groups the hits by entity with a counting sort over primitive arrays, so nothing is allocated per hit beyond
+        // one key and one set of arrays per entity.
+        Map<EntityRef, Integer> entityOrdinals = new HashMap<>();
+        List<EntityRef> hitEntities = new ArrayList<>();
+        int[] hitOrdinals = new int[entities.length];
+        int[] hitOffsets = new int[entities.length + 1];
+        for (int hit = 0; hit < entities.length; hit++) {
+            Integer ordinal = entityOrdinals.get(entities[hit]);
+            if (ordinal == null) {
+                ordinal = hitEntities.size();
+                entityOrdinals.put(entities[hit], ordinal);
+                hitEntities.add(entities[hit]);
+            }
+            hitOrdinals[hit] = ordinal;
+            hitOffsets[ordinal + 1]++;
+        }
+        for (int ordinal = 0; ordinal < hitEntities.size(); ordinal++) {
+            hitOffsets[ordinal + 1] += hitOffsets[ordinal];
+        }
+        int[] sortedHits = new int[entities.length];
+        int[] nextSlots = Arrays.copyOf(hitOffsets, hitEntities.size());
+        for (int hit = 0; hit < entities.length; hit++) {
+            sortedHits[nextSlots[hitOrdinals[hit]]++] = hit;
+        }
+        for (int ordinal = 0; ordinal < hitEntities.size(); ordinal++) {
+            int first = hitOffsets[ordinal];
+            int hitCount = hitOffsets[ordinal + 1] - first;
+            int[] entityParts = new int[hitCount];
+            int[] entityAmounts = new int[hitCount];
+            Prefab[] entityDamageTypes = new Prefab[hitCount];
+            for (int i = 0; i < hitCount; i++) {
+                int hit = sortedHits[first + i];
+                entityParts[i] = parts[hit];
+                entityAmounts[i] = amounts[hit];
+                entityDamageTypes[i] = damageTypes[hit];
+            }
+            hitEntities.get(ordinal).send(new AnatomyPartsImpactedEvent(entityParts, entityAmounts, entityDamageTypes, instigator));
+        }
+    }
+
     /**
      * Console command - Damages a particular anatomy part for a given amount.
      */
@@ -54,8 +266,10 @@ public class AnatomySystem extends BaseComponentSystem {
     public String dmgAnatomyPart(@Sender EntityRef entityRef, @CommandParam("name") String partName, @CommandParam("amount") int amount) {
         EntityRef clientEntity = entityRef.getComponent(ClientComponent.class).character;
         AnatomyComponent anatomyComponent = clientEntity.getComponent(AnatomyComponent.class);
-        AnatomyPartTag partTag = anatomyComponent.parts.get(partName);
-        if (partTag != null) {
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        int part = layout.getPartIndex(partName);
+        if (part >= 0) {
+            AnatomyPartTag partTag = layout.getPart(part);
             clientEntity.send(new AnatomyPartImpactedEvent(amount, partTag));
             return "Inflicted " + amount + " damage to " + getAnatomyNameFromID(partTag.id, anatomyComponent);
         } else {
@@ -70,11 +284,11 @@ public class AnatomySystem extends BaseComponentSystem {
     public String dmgAnatomyPartAll(@Sender EntityRef entityRef, @CommandParam("amount") int amount) {
         EntityRef clientEntity = entityRef.getComponent(ClientComponent.class).character;
         AnatomyComponent anatomyComponent = clientEntity.getComponent(AnatomyComponent.class);
-        List<String> keys = new ArrayList<>(anatomyComponent.parts.keySet());
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
         String result = "";
-        for (String key : keys) {
-            result += "Inflicted " + amount + " damage to " + getAnatomyNameFromID(key, anatomyComponent) + "\n";
-            AnatomyPartTag partTag = anatomyComponent.parts.get(key);
+        for (int part = 0; part < layout.size(); part++) {
+            AnatomyPartTag partTag = layout.getPart(part);
+            result += "Inflicted " + amount + " damage to " + partTag.name + "\n";
             clientEntity.send(new AnatomyPartImpactedEvent(amount, partTag));
         }
         return result;
@@ -87,15 +301,49 @@ public class AnatomySystem extends BaseComponentSystem {
     public String showAnatomyEffects(@Sender EntityRef client) {
         EntityRef character = client.getComponent(ClientComponent.class).character;
         String result = "Anatomy effects:\n";
-        AnatomyStatusGatheringEvent event = new AnatomyStatusGatheringEvent();
-        character.send(event);
-        Map<String, List<String>> partEffects = event.getEffectsMap();
-        for (Map.Entry<String, List<String>> partEntry : partEffects.entrySet()) {
-            result += getAnatomyNameFromID(partEntry.getKey(), character.getComponent(AnatomyComponent.class)) + ": ";
-            for (String partEffect : partEntry.getValue()) {
-                result += partEffect + ", ";
+        AnatomyComponent anatomyComponent = character.getComponent(AnatomyComponent.class);
+        if (anatomyComponent == null || !statusService.isAffected(character)) {
+            return result;
+        }
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        for (int part = 0; part < layout.size(); part++) {
+            List<AnatomyEffect> partEffects = statusService.getEffects(character, part);
+            if (!partEffects.isEmpty()) {
+                result += layout.getPart(part).name + ": ";
+                for (AnatomyEffect partEffect : partEffects) {
+                    result += partEffect.getDisplayName() + ", ";
+                }
+                result += "\n";
             }
-            result += "\n";
+        }
+        return result;
+    }
+
+    /**
+     * Console command - Shows the anatomy metrics, or enables, disables or resets them.
+     */
+    @Command(shortDescription = "Shows anatomy runtime metrics", helpText = "Use 'on', 'off' or 'reset' to enable, disable or reset the metrics",
+            runOnServer = true)
+    public String anatomyStats(@CommandParam(value = "action", required = false) String action) {
+        if ("on".equals(action)) {
+            metrics.setEnabled(true);
+            return "Anatomy metrics enabled.";
+        } else if ("off".equals(action)) {
+            metrics.setEnabled(false);
+            return "Anatomy metrics disabled.";
+        } else if ("reset".equals(action)) {
+            metrics.reset();
+            return "Anatomy metrics reset.";
+        }
+        String result = "Anatomy metrics (" + (metrics.isEnabled() ? "enabled" : "disabled") + "):\n";
+        for (AnatomyMetrics.Counter counter : AnatomyMetrics.Counter.values()) {
+            result += counter + ": " + metrics.getCount(counter) + "\n";
+        }
+        result += "Injured entities: " + metrics.getInjuredEntityCount() + "\n";
+        for (String handler : metrics.getHandlers()) {
+            long calls = metrics.getHandlerCalls(handler);
+            long time = metrics.getHandlerTime(handler);
+            result += handler + ": " + calls + " calls, " + time / 1000 + " us total, " + time / Math.max(1, calls) + " ns/call\n";
         }
         return result;
     }
@@ -106,6 +354,19 @@ public class AnatomySystem extends BaseComponentSystem {
      * @return Name of the part
      */
     public String getAnatomyNameFromID(String partID, AnatomyComponent component) {
-        return component.parts.get(partID).name;
+        AnatomyLayout layout = layoutRegistry.getLayout(component);
+        int part = layout.getPartIndex(partID);
+        return part >= 0 ? layout.getPart(part).name : partID;
+    }
+
+    /**
+     * The part hit by a positional damage, -1 once its damage has been allocated.
+     */
+    private static final class PendingHit {
+        private int part;
+
+        PendingHit(int part) {
+            this.part = part;
+        }
     }
 }
@@ -0,0 +1,79 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+/**
+ * Accumulates the number, total and maximum duration of repeated operations, like the calls of an event handler or
+ * the ticks of a benchmark.
+ */
+public final class AnatomyTimer {
+    private long count;
+    private long totalTime;
+    private long maxTime;
+
+    /**
+     * Runs an operation and records its duration.
+     */
+    public void time(Runnable operation) {
+        long start = System.nanoTime();
+        try {
+            operation.run();
+        } finally {
+            stop(start);
+        }
+    }
+
+    /**
+     * Records the duration of an operation since a start time.
+     *
+     * @param start The start time, from {@link System#nanoTime()}.
+     */
+    public void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records the duration of an operation.
+     *
+     * @param duration The duration in ns.
+     */
+    public void record(long duration) {
+        count++;
+        totalTime += duration;
+        maxTime = Math.max(maxTime, duration);
+    }
+
+    public void reset() {
+        count = 0;
+        totalTime = 0;
+        maxTime = 0;
+    }
+
+    /**
+     * @return The number of recorded operations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The total duration of the recorded operations in ns.
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return The longest duration of a recorded operation in ns.
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @return The average duration of the recorded operations in ns, 0 if none was recorded.
+     */
+    public long getAverageTime() {
+        return totalTime / Math.max(1, count);
+    }
+}
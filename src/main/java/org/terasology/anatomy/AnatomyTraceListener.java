@@ -0,0 +1,62 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+/**
+ * Receives trace records of the work done by the anatomy systems, like the events of a profiler. Listeners are
+ * registered with {@link AnatomyTracing}, and no record is created while none is registered.
+ */
+public interface AnatomyTraceListener {
+    /**
+     * Called when a part of a sub-system is damaged.
+     *
+     * @param entityRef The damaged entity.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @param amount The damage dealt to the part, after the damage type multiplier.
+     * @param duration The time in ns taken to apply the damage.
+     */
+    default void onPartDamaged(EntityRef entityRef, String subsystem, int part, int amount, long duration) {
+    }
+
+    /**
+     * Called when a part of a sub-system is restored to full health, like by a command.
+     *
+     * @param entityRef The healed entity.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     */
+    default void onPartHealed(EntityRef entityRef, String subsystem, int part) {
+    }
+
+    /**
+     * Called when the effect severity of a part changes.
+     *
+     * @param entityRef The entity of the part.
+     * @param subsystem The name of the sub-system.
+     * @param part The index of the part in the entity's anatomy layout.
+     * @param previousSeverity The previous severity of the effect.
+     * @param severity The new severity of the effect.
+     */
+    default void onSeverityChanged(EntityRef entityRef, String subsystem, int part, int previousSeverity, int severity) {
+    }
+
+    /**
+     * Called after a regen pass over all injured entities.
+     *
+     * @param regeneratedEntities The number of entities which reached their next threshold time.
+     * @param duration The time in ns taken by the pass.
+     */
+    default void onRegenBatch(int regeneratedEntities, long duration) {
+    }
+
+    /**
+     * Called when an entity dies of blood loss.
+     *
+     * @param entityRef The dead entity.
+     */
+    default void onBloodLossDeath(EntityRef entityRef) {
+    }
+}
@@ -0,0 +1,332 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
+import org.terasology.anatomy.event.AnatomyPartsImpactedEvent;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.players.event.OnPlayerRespawnedEvent;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
+import org.terasology.engine.utilities.SandboxFileManager;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the input stream of the anatomy systems to an injury trace in the sandbox directory, so that the combat of a
+ * server can be replayed offline by the {@link AnatomyTraceReplaySystem}. Records the part hits, the respawns and the
+ * heals of the entities with an anatomy, in the {@link AnatomyInjuryTrace} format.
+ * <p>
+ * Recording is opt-in with the {@code anatomyRecord} command. The records are buffered in memory and written out a
+ * segment at a time.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(AnatomyTraceRecorderSystem.class)
+public class AnatomyTraceRecorderSystem extends BaseComponentSystem implements AnatomyTraceListener {
+    private static final Logger logger = LoggerFactory.getLogger(AnatomyTraceRecorderSystem.class);
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    @In
+    private AnatomyTracing tracing;
+
+    private final SandboxFileManager sandboxFileManager = new SandboxFileManager();
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final Map<EntityRef, Integer> entityIds = new HashMap<>();
+
+    /**
+     * The name of the trace being recorded, null while not recording.
+     */
+    private String traceName;
+    private int segment;
+    private ByteArrayOutputStream segmentBytes;
+    private DataOutputStream output;
+    private long lastRecordTime;
+    private long recordCount;
+
+    /**
+     * The offset in the segment of the record being written, so that a record which failed can be left out.
+     */
+    private int recordStart;
+
+    @Override
+    public void shutdown() {
+        if (isRecording()) {
+            stopRecording();
+        }
+    }
+
+    /**
+     * @return Whether a trace is being recorded.
+     */
+    public boolean isRecording() {
+        return traceName != null;
+    }
+
+    /**
+     * Console command - Starts or stops recording an injury trace.
+     */
+    @Command(shortDescription = "Records the anatomy injuries to a trace",
+            helpText = "Use 'start <name>' to start recording the hits, respawns and heals to a trace in the sandbox "
+                    + "directory, and 'stop' to write it out. Replay it with anatomyReplay.")
+    public String anatomyRecord(@CommandParam("action") String action,
+                                @CommandParam(value = "name", required = false) String name) {
+        if ("start".equals(action)) {
+            if (isRecording()) {
+                return "Already recording the anatomy trace " + traceName + ".";
+            }
+            if (name == null || !name.matches("[A-Za-z0-9_-]+")) {
+                return "The name of the trace may only contain letters, digits, '_' and '-'.";
+            }
+            startRecording(name);
+            if (!isRecording()) {
+                return "Failed to start the anatomy trace " + name + ", see the log.";
+            }
+            return "Recording the anatomy trace " + name + ".";
+        } else if ("stop".equals(action)) {
+            if (!isRecording()) {
+                return "No anatomy trace is being recorded.";
+            }
+            String recordedName = traceName;
+            long records = stopRecording();
+            return "Recorded " + records + " records to the anatomy trace " + recordedName + ".";
+        }
+        return "Unknown action, use 'start <name>' or 'stop'.";
+    }
+
+    /**
+     * Starts recording a trace, overwriting any trace with the same name.
+     *
+     * @param name The name of the trace.
+     */
+    public void startRecording(String name) {
+        traceName = name;
+        segment = 0;
+        recordCount = 0;
+        stringIds.clear();
+        entityIds.clear();
+        lastRecordTime = clock.getGameTimeInMs();
+        startSegment();
+        tracing.addListener(this);
+    }
+
+    /**
+     * Stops recording and writes out the last segment of the trace.
+     *
+     * @return The number of records in the trace.
+     */
+    public long stopRecording() {
+        return stopRecording(output.size());
+    }
+
+    /**
+     * Stops recording and writes out the start of the last segment.
+     *
+     * @param segmentLength The number of bytes of the last segment to write.
+     * @return The number of records in the trace.
+     */
+    private long stopRecording(int segmentLength) {
+        tracing.removeListener(this);
+        writeSegment(segmentLength);
+        long records = recordCount;
+        traceName = null;
+        segmentBytes = null;
+        output = null;
+        stringIds.clear();
+        entityIds.clear();
+        return records;
+    }
+
+    @ReceiveEvent
+    public void onPartImpacted(AnatomyPartImpactedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (!isRecording()) {
+            return;
+        }
+        try {
+            recordImpact(entityRef, anatomyComponent, event.getTargetPart().id, event.getAmount(), event.getDamageType());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @ReceiveEvent
+    public void onPartsImpacted(AnatomyPartsImpactedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (!isRecording()) {
+            return;
+        }
+        AnatomyLayout layout = layoutRegistry.getLayout(anatomyComponent);
+        try {
+            for (int hit = 0; hit < event.size(); hit++) {
+                int part = event.getPart(hit);
+                if (part >= 0 && part < layout.size()) {
+                    recordImpact(entityRef, anatomyComponent, layout.getPartId(part), event.getAmount(hit), event.getDamageType(hit));
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @ReceiveEvent
+    public void onPlayerRespawn(OnPlayerRespawnedEvent event, EntityRef entityRef, AnatomyComponent anatomyComponent) {
+        if (!isRecording()) {
+            return;
+        }
+        try {
+            long gameTime = clock.getGameTimeInMs();
+            int entityId = getEntityId(entityRef, anatomyComponent, gameTime);
+            writeRecordHeader(AnatomyInjuryTrace.RESPAWN, gameTime);
+            AnatomyInjuryTrace.writeVarInt(output, entityId);
+            endRecord();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onPartHealed(EntityRef entityRef, String subsystem, int part) {
+        AnatomyComponent anatomyComponent = entityRef.getComponent(AnatomyComponent.class);
+        if (!isRecording() || anatomyComponent == null) {
+            return;
+        }
+        try {
+            long gameTime = clock.getGameTimeInMs();
+            int entityId = getEntityId(entityRef, anatomyComponent, gameTime);
+            int subsystemId = getStringId(subsystem, gameTime);
+            int partId = getStringId(layoutRegistry.getLayout(anatomyComponent).getPartId(part), gameTime);
+            writeRecordHeader(AnatomyInjuryTrace.HEAL, gameTime);
+            AnatomyInjuryTrace.writeVarInt(output, entityId);
+            AnatomyInjuryTrace.writeVarInt(output, subsystemId);
+            AnatomyInjuryTrace.writeVarInt(output, partId);
+            endRecord();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void recordImpact(EntityRef entityRef, AnatomyComponent anatomyComponent, String partId, int amount,
+                              Prefab damageType) throws IOException {
+        long gameTime = clock.getGameTimeInMs();
+        int entityId = getEntityId(entityRef, anatomyComponent, gameTime);
+        int partStringId = getStringId(partId, gameTime);
+        int damageTypeId = getStringId(damageType != null ? damageType.getName() : null, gameTime);
+        writeRecordHeader(AnatomyInjuryTrace.IMPACT, gameTime);
+        AnatomyInjuryTrace.writeVarInt(output, entityId);
+        AnatomyInjuryTrace.writeVarInt(output, partStringId);
+        AnatomyInjuryTrace.writeVarInt(output, Math.max(0, amount));
+        AnatomyInjuryTrace.writeVarInt(output, damageTypeId);
+        endRecord();
+    }
+
+    /**
+     * Gets the ID of a string in the trace, writing the string the first time it is used.
+     *
+     * @return The ID of the string, or 0 if the string is null or empty.
+     */
+    private int getStringId(String string, long gameTime) throws IOException {
+        if (string == null || string.isEmpty()) {
+            return 0;
+        }
+        Integer stringId = stringIds.get(string);
+        if (stringId == null) {
+            stringId = stringIds.size() + 1;
+            stringIds.put(string, stringId);
+            writeRecordHeader(AnatomyInjuryTrace.STRING, gameTime);
+            output.writeUTF(string);
+            endRecord();
+        }
+        return stringId;
+    }
+
+    /**
+     * Gets the ID of an entity in the trace, writing its anatomy the first time the entity is seen.
+     */
+    private int getEntityId(EntityRef entityRef, AnatomyComponent anatomyComponent, long gameTime) throws IOException {
+        Integer entityId = entityIds.get(entityRef);
+        if (entityId == null) {
+            Prefab prefab = entityRef.getParentPrefab();
+            int definitionId = getStringId(anatomyComponent.definition, gameTime);
+            int prefabId = getStringId(prefab != null ? prefab.getName() : null, gameTime);
+            entityId = entityIds.size();
+            entityIds.put(entityRef, entityId);
+            writeRecordHeader(AnatomyInjuryTrace.ENTITY, gameTime);
+            AnatomyInjuryTrace.writeVarInt(output, definitionId);
+            AnatomyInjuryTrace.writeVarInt(output, prefabId);
+            endRecord();
+        }
+        return entityId;
+    }
+
+    private void writeRecordHeader(byte type, long gameTime) throws IOException {
+        recordStart = output.size();
+        output.writeByte(type);
+        AnatomyInjuryTrace.writeVarLong(output, Math.max(0, gameTime - lastRecordTime));
+        lastRecordTime = Math.max(lastRecordTime, gameTime);
+    }
+
+    private void endRecord() {
+        recordCount++;
+        if (output.size() >= AnatomyInjuryTrace.SEGMENT_SIZE) {
+            writeSegment(output.size());
+            startSegment();
+        }
+    }
+
+    private void startSegment() {
+        segmentBytes = new ByteArrayOutputStream(AnatomyInjuryTrace.SEGMENT_SIZE + Short.MAX_VALUE);
+        output = new DataOutputStream(segmentBytes);
+        recordStart = 0;
+        try {
+            output.writeInt(AnatomyInjuryTrace.MAGIC);
+            output.writeByte(AnatomyInjuryTrace.VERSION);
+            output.writeLong(lastRecordTime);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void writeSegment(int length) {
+        if (length == 0) {
+            return;
+        }
+        byte[] bytes = Arrays.copyOf(segmentBytes.toByteArray(), length);
+        String fileName = AnatomyInjuryTrace.getSegmentName(traceName, segment++);
+        sandboxFileManager.writeFile(fileName, outputStream -> {
+            try {
+                outputStream.write(bytes);
+            } catch (IOException e) {
+                logger.error("Failed to write the anatomy trace segment {}", fileName, e);
+            }
+        });
+    }
+
+    /**
+     * Stops recording after a record failed to be written, writing out the segment up to the failed record.
+     */
+    private void fail(IOException e) {
+        logger.error("Failed to record the anatomy trace {}, stopping", traceName, e);
+        if (isRecording()) {
+            stopRecording(recordStart);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.event.AnatomyPartImpactedEvent;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.prefab.PrefabManager;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.logic.console.commandSystem.annotations.Command;
+import org.terasology.engine.logic.console.commandSystem.annotations.CommandParam;
+import org.terasology.engine.logic.health.EngineDamageTypes;
+import org.terasology.engine.registry.In;
+import org.terasology.engine.utilities.SandboxFileManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays an injury trace recorded by the {@link AnatomyTraceRecorderSystem} against the authority anatomy systems, as
+ * fast as they can process it. Each entity of the trace is recreated with the same anatomy, and the recorded hits,
+ * respawns and heals are applied in order inside an {@link AnatomyClock.Simulation} following the trace time, with a
+ * change flush every {@link #TICK_INTERVAL} ms and a regen pass over the replayed entities every
+ * {@link #REGEN_INTERVAL} ms. The stretches of the trace without any injured replayed entity are skipped. A respawn heals
+ * the entity in every sub-system, like the respawn of a player. The rest of the world keeps the engine's game time and
+ * isn't touched by the replay.
+ * <p>
+ * This turns a recording of real combat into a repeatable benchmark: the report gives the impact throughput and the
+ * tick times, which can be compared between versions of the module.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+public class AnatomyTraceReplaySystem extends BaseComponentSystem {
+    private static final Logger logger = LoggerFactory.getLogger(AnatomyTraceReplaySystem.class);
+
+    /**
+     * Prefab whose anatomy is used for the entities recorded without a definition or prefab anatomy.
+     */
+    private static final String TEMPLATE_PREFAB = "engine:player";
+
+    /**
+     * Trace time in ms between two flushes of the changes, like a server tick.
+     */
+    private static final long TICK_INTERVAL = 50;
+
+    /**
+     * Trace time in ms between two regen passes, like the {@link AnatomyRegenSystem}.
+     */
+    private static final long REGEN_INTERVAL = 1000;
+
+    @In
+    private EntityManager entityManager;
+
+    @In
+    private PrefabManager prefabManager;
+
+    @In
+    private AnatomyClock clock;
+
+    @In
+    private AnatomyChangeTracker changeTracker;
+
+    @In
+    private AnatomyRegenSystem regenSystem;
+
+    @In
+    private AnatomyLayoutRegistry layoutRegistry;
+
+    @In
+    private AnatomySubsystemRegistry subsystemRegistry;
+
+    @In
+    private AnatomyTraceRecorderSystem recorderSystem;
+
+    private final SandboxFileManager sandboxFileManager = new SandboxFileManager();
+
+    /**
+     * The strings of the trace, the string ID minus one being the index.
+     */
+    private final List<String> strings = new ArrayList<>();
+    private final List<EntityRef> entities = new ArrayList<>();
+    private final Map<String, Prefab> damageTypes = new HashMap<>();
+
+    /**
+     * The simulated time of the running replay.
+     */
+    private AnatomyClock.Simulation simulation;
+    private boolean started;
+    private long startTime;
+    private long clockOffset;
+    private long nextTickTime;
+    private long nextRegenTime;
+
+    private long records;
+    private long impacts;
+    private long respawns;
+    private long heals;
+    private long skippedRecords;
+    private final AnatomyTimer impactTimer = new AnatomyTimer();
+    private final AnatomyTimer tickTimer = new AnatomyTimer();
+
+    /**
+     * Console command - Replays an injury trace.
+     */
+    @Command(shortDescription = "Replays a recorded anatomy trace as a benchmark",
+            helpText = "Recreates the entities of a trace recorded with anatomyRecord and applies its hits, respawns and "
+                    + "heals as fast as possible, in a simulated time which only the replayed entities see.")
+    public String anatomyReplay(@CommandParam("name") String name) {
+        String result = replay(name);
+        logger.info(result);
+        return result;
+    }
+
+    /**
+     * Replays an injury trace.
+     *
+     * @param traceName The name of the trace in the sandbox directory.
+     * @return A report of the impact throughput and the tick times.
+     */
+    public String replay(String traceName) {
+        if (recorderSystem.isRecording()) {
+            return "Stop recording before replaying an anatomy trace.";
+        }
+        byte[] bytes = readSegment(traceName, 0);
+        if (bytes == null) {
+            return "No anatomy trace named " + traceName + " found.";
+        }
+        reset();
+        // The pending changes of the world are handled at the engine's game time.
+        changeTracker.flush();
+        long replayStart = System.nanoTime();
+        int segment = 0;
+        try (AnatomyClock.Simulation replaySimulation = clock.startSimulation(clock.getGameTimeInMs())) {
+            simulation = replaySimulation;
+            while (bytes != null) {
+                replaySegment(new DataInputStream(new ByteArrayInputStream(bytes)));
+                bytes = readSegment(traceName, ++segment);
+            }
+            tick(nextTickTime);
+        } catch (IOException e) {
+            logger.error("Failed to replay the anatomy trace {}", traceName, e);
+            return "Failed to replay segment " + segment + " of the anatomy trace " + traceName + ": " + e.getMessage();
+        } finally {
+            simulation = null;
+            for (EntityRef entity : entities) {
+                entity.destroy();
+            }
+            entities.clear();
+        }
+        long wallTime = System.nanoTime() - replayStart;
+        long simulatedTime = nextTickTime - startTime;
+
+        return "Anatomy trace replay of " + traceName + ": " + records + " records in " + segment + " segments, "
+                + simulatedTime / 1000 + " simulated seconds\n"
+                + String.format("Wall time: %.3f s, %.0f impacts per second\n",
+                        wallTime / 1e9, impacts / Math.max(wallTime / 1e9, 1e-9))
+                + "Records: " + impacts + " impacts, " + respawns + " respawns, " + heals + " heals, "
+                + skippedRecords + " skipped\n"
+                + String.format("Impact time: %.3f us average\n", impactTimer.getAverageTime() / 1e3)
+                + String.format("Tick time: %.3f ms average, %.3f ms max over %d ticks\n",
+                        tickTimer.getAverageTime() / 1e6, tickTimer.getMaxTime() / 1e6, tickTimer.getCount());
+    }
+
+    private void reset() {
+        strings.clear();
+        entities.clear();
+        damageTypes.clear();
+        started = false;
+        records = 0;
+        impacts = 0;
+        respawns = 0;
+        heals = 0;
+        skippedRecords = 0;
+        impactTimer.reset();
+        tickTimer.reset();
+    }
+
+    /**
+     * @return The content of a segment of the trace, or null if there is no such segment.
+     */
+    private byte[] readSegment(String traceName, int segment) {
+        byte[][] content = new byte[1][];
+        sandboxFileManager.readFile(AnatomyInjuryTrace.getSegmentName(traceName, segment), bytes -> content[0] = bytes);
+        return content[0];
+    }
+
+    private void replaySegment(DataInputStream input) throws IOException {
+        if (input.readInt() != AnatomyInjuryTrace.MAGIC) {
+            throw new IOException("Not an anatomy trace");
+        }
+        byte version = input.readByte();
+        if (version != AnatomyInjuryTrace.VERSION) {
+            throw new IOException("Unsupported anatomy trace version " + version);
+        }
+        long time = input.readLong();
+        if (!started) {
+            started = true;
+            startTime = time;
+            clockOffset = simulation.getGameTimeInMs() - time;
+            nextTickTime = time + TICK_INTERVAL;
+            nextRegenTime = time + REGEN_INTERVAL;
+        }
+        while (input.available() > 0) {
+            byte type = input.readByte();
+            time += AnatomyInjuryTrace.readVarLong(input);
+            advanceTo(time);
+            records++;
+            switch (type) {
+                case AnatomyInjuryTrace.STRING:
+                    strings.add(input.readUTF());
+                    break;
+                case AnatomyInjuryTrace.ENTITY:
+                    entities.add(createEntity(getString(input), getString(input)));
+                    break;
+                case AnatomyInjuryTrace.IMPACT:
+                    replayImpact(getEntity(input), getString(input), AnatomyInjuryTrace.readVarInt(input), getString(input));
+                    break;
+                case AnatomyInjuryTrace.RESPAWN:
+                    replayRespawn(getEntity(input));
+                    break;
+                case AnatomyInjuryTrace.HEAL:
+                    replayHeal(getEntity(input), getString(input), getString(input));
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type);
+            }
+        }
+    }
+
+    /**
+     * Runs the ticks due before a trace time, and moves the clock to it.
+     */
+    private void advanceTo(long time) {
+        while (nextTickTime <= time) {
+            if (isIdle()) {
+                // Nothing regenerates, so jump to the last tick before the time.
+                nextTickTime += (time - nextTickTime) / TICK_INTERVAL * TICK_INTERVAL;
+                if (nextRegenTime < nextTickTime) {
+                    nextRegenTime += (nextTickTime - nextRegenTime + REGEN_INTERVAL - 1) / REGEN_INTERVAL * REGEN_INTERVAL;
+                }
+            }
+            tick(nextTickTime);
+            nextTickTime += TICK_INTERVAL;
+        }
+        setClock(time);
+    }
+
+    private void tick(long time) {
+        long tickStart = System.nanoTime();
+        setClock(time);
+        if (time >= nextRegenTime) {
+            regenSystem.regenerate(entities, simulation.getGameTimeInMs());
+            nextRegenTime += REGEN_INTERVAL;
+        }
+        changeTracker.flush();
+        tickTimer.stop(tickStart);
+    }
+
+    /**
+     * @return Whether no replayed entity is injured, so the ticks have nothing to do.
+     */
+    private boolean isIdle() {
+        for (EntityRef entity : entities) {
+            if (entity.hasComponent(InjuredBoneComponent.class) || entity.hasComponent(InjuredCirculatoryComponent.class)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setClock(long time) {
+        long elapsed = time + clockOffset - simulation.getGameTimeInMs();
+        if (elapsed > 0) {
+            simulation.advance(elapsed);
+        }
+    }
+
+    private EntityRef createEntity(String definition, String prefabName) {
+        AnatomyComponent anatomyComponent = new AnatomyComponent();
+        Prefab prefab = prefabName != null ? prefabManager.getPrefab(prefabName) : null;
+        AnatomyComponent prefabAnatomy = prefab != null ? prefab.getComponent(AnatomyComponent.class) : null;
+        if (prefabAnatomy == null) {
+            Prefab template = prefabManager.getPrefab(TEMPLATE_PREFAB);
+            prefabAnatomy = template != null ? template.getComponent(AnatomyComponent.class) : null;
+        }
+        if (prefabAnatomy != null) {
+            anatomyComponent.copyFrom(prefabAnatomy);
+        }
+        if (definition != null) {
+            anatomyComponent.definition = definition;
+        }
+        return entityManager.create(anatomyComponent);
+    }
+
+    private void replayImpact(EntityRef entityRef, String partId, int amount, String damageTypeName) {
+        AnatomyComponent anatomyComponent = entityRef.getComponent(AnatomyComponent.class);
+        AnatomyLayout layout = anatomyComponent != null ? layoutRegistry.getLayout(anatomyComponent) : null;
+        int part = layout != null && partId != null ? layout.getPartIndex(partId) : -1;
+        if (part < 0) {
+            skippedRecords++;
+            return;
+        }
+        Prefab damageType = damageTypes.computeIfAbsent(damageTypeName == null ? "" : damageTypeName, name -> {
+            Prefab prefab = name.isEmpty() ? null : prefabManager.getPrefab(name);
+            return prefab != null ? prefab : EngineDamageTypes.DIRECT.get();
+        });
+        impactTimer.time(() -> entityRef.send(new AnatomyPartImpactedEvent(amount, layout.getPart(part), damageType)));
+        impacts++;
+    }
+
+    private void replayRespawn(EntityRef entityRef) {
+        for (String subsystemName : subsystemRegistry.getSubsystemNames()) {
+            subsystemRegistry.getSubsystem(subsystemName).healAll(entityRef);
+        }
+        respawns++;
+    }
+
+    private void replayHeal(EntityRef entityRef, String subsystemName, String partId) {
+        AnatomySubsystem subsystem = subsystemName != null ? subsystemRegistry.getSubsystem(subsystemName) : null;
+        AnatomyComponent anatomyComponent = entityRef.getComponent(AnatomyComponent.class);
+        int part = anatomyComponent != null && partId != null ? layoutRegistry.getLayout(anatomyComponent).getPartIndex(partId) : -1;
+        if (subsystem == null || part < 0) {
+            skippedRecords++;
+            return;
+        }
+        subsystem.healPart(entityRef, part);
+        heals++;
+    }
+
+    /**
+     * Reads a string ID and returns its string, null for no string.
+     */
+    private String getString(DataInputStream input) throws IOException {
+        int stringId = AnatomyInjuryTrace.readVarInt(input);
+        if (stringId == 0) {
+            return null;
+        }
+        if (stringId > strings.size()) {
+            throw new IOException("Unknown string " + stringId);
+        }
+        return strings.get(stringId - 1);
+    }
+
+    private EntityRef getEntity(DataInputStream input) throws IOException {
+        int entityId = AnatomyInjuryTrace.readVarInt(input);
+        if (entityId >= entities.size()) {
+            throw new IOException("Unknown entity " + entityId);
+        }
+        return entities.get(entityId);
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+/**
+ * Dispatches the trace records of the anatomy systems to the registered {@link AnatomyTraceListener}s. The systems only
+ * measure and create records while {@link #isEnabled()}, so tracing costs a single check when nobody listens.
+ */
+public interface AnatomyTracing {
+    void addListener(AnatomyTraceListener listener);
+
+    void removeListener(AnatomyTraceListener listener);
+
+    /**
+     * @return Whether any listener is registered.
+     */
+    boolean isEnabled();
+
+    /**
+     * @return The listener dispatching to all the registered listeners.
+     */
+    AnatomyTraceListener getListener();
+}
@@ -0,0 +1,75 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.Share;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Provides {@link AnatomyTracing}, dispatching the trace records to the registered listeners in registration order.
+ */
+@RegisterSystem
+@Share(AnatomyTracing.class)
+public class AnatomyTracingSystem extends BaseComponentSystem implements AnatomyTracing, AnatomyTraceListener {
+    private final List<AnatomyTraceListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addListener(AnatomyTraceListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(AnatomyTraceListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !listeners.isEmpty();
+    }
+
+    @Override
+    public AnatomyTraceListener getListener() {
+        return this;
+    }
+
+    @Override
+    public void onPartDamaged(EntityRef entityRef, String subsystem, int part, int amount, long duration) {
+        for (AnatomyTraceListener listener : listeners) {
+            listener.onPartDamaged(entityRef, subsystem, part, amount, duration);
+        }
+    }
+
+    @Override
+    public void onPartHealed(EntityRef entityRef, String subsystem, int part) {
+        for (AnatomyTraceListener listener : listeners) {
+            listener.onPartHealed(entityRef, subsystem, part);
+        }
+    }
+
+    @Override
+    public void onSeverityChanged(EntityRef entityRef, String subsystem, int part, int previousSeverity, int severity) {
+        for (AnatomyTraceListener listener : listeners) {
+            listener.onSeverityChanged(entityRef, subsystem, part, previousSeverity, severity);
+        }
+    }
+
+    @Override
+    public void onRegenBatch(int regeneratedEntities, long duration) {
+        for (AnatomyTraceListener listener : listeners) {
+            listener.onRegenBatch(regeneratedEntities, duration);
+        }
+    }
+
+    @Override
+    public void onBloodLossDeath(EntityRef entityRef) {
+        for (AnatomyTraceListener listener : listeners) {
+            listener.onBloodLossDeath(entityRef);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interns the characteristics of the anatomy parts, like bone or blood, into bits of a {@code long} mask,
+ * so that the parts with a set of characteristics can be found with a single bitwise test. The traits are owned by the
+ * {@link AnatomyLayoutRegistry}, so the bits are shared by all the layouts of a game and assigned again in the next one.
+ * <p>
+ * The characteristics registered by the sub-systems are interned first, so they always get a bit. The traits beyond
+ * {@link #MAX_TRAITS} are logged and left without a bit: no part matches them.
+ */
+public final class AnatomyTraits {
+    /**
+     * The maximum number of distinct characteristics.
+     */
+    public static final int MAX_TRAITS = Long.SIZE;
+
+    private static final Logger logger = LoggerFactory.getLogger(AnatomyTraits.class);
+
+    private final Map<String, Long> masks = new HashMap<>();
+
+    /**
+     * The traits which didn't get a bit, so that each one is only logged once.
+     */
+    private final Set<String> ignoredTraits = new HashSet<>();
+
+    /**
+     * Gets the mask of a characteristic, assigning it a bit if it has none yet.
+     *
+     * @param trait The name of the characteristic.
+     * @return The mask with the single bit of the trait, or 0 if all the bits are taken.
+     */
+    public long intern(String trait) {
+        Long mask = masks.get(trait);
+        if (mask != null) {
+            return mask;
+        }
+        if (masks.size() >= MAX_TRAITS) {
+            if (ignoredTraits.add(trait)) {
+                logger.warn("More than {} anatomy characteristics, ignoring {}", MAX_TRAITS, trait);
+            }
+            return 0;
+        }
+        mask = 1L << masks.size();
+        masks.put(trait, mask);
+        return mask;
+    }
+
+    /**
+     * Gets the mask of several characteristics, assigning bits to the new ones.
+     *
+     * @param traits The names of the characteristics.
+     * @return The mask with the bits of all the traits.
+     */
+    public long intern(Collection<String> traits) {
+        long mask = 0;
+        for (String trait : traits) {
+            mask |= intern(trait);
+        }
+        return mask;
+    }
+}
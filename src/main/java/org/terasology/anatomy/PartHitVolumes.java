@@ -0,0 +1,122 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy;
+
+import org.joml.Vector3fc;
+import org.terasology.anatomy.component.AnatomyPartTag;
+
+import java.util.Arrays;
+
+/**
+ * Resolves the part of a layout hit at a point in entity-local space, using a table of height bands. Each band lists
+ * the parts whose bounding box overlaps it, so a hit only needs to be tested against the few parts at its height.
+ */
+final class PartHitVolumes {
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] minZ;
+    private final float[] maxX;
+    private final float[] maxY;
+    private final float[] maxZ;
+
+    /**
+     * Sorted distinct heights at which a band starts or ends.
+     */
+    private final float[] boundaries;
+
+    /**
+     * Indices of the parts overlapping each band, the band between the boundaries i and i+1 being at index i.
+     */
+    private final int[][] bandParts;
+
+    PartHitVolumes(AnatomyPartTag[] parts) {
+        int size = parts.length;
+        minX = new float[size];
+        minY = new float[size];
+        minZ = new float[size];
+        maxX = new float[size];
+        maxY = new float[size];
+        maxZ = new float[size];
+
+        int[] boundedParts = new int[size];
+        int numBounded = 0;
+        float[] heights = new float[2 * size];
+        for (int i = 0; i < size; i++) {
+            AnatomyPartTag part = parts[i];
+            if (part.boundsMin == null || part.boundsMax == null) {
+                continue;
+            }
+            minX[i] = Math.min(part.boundsMin.x(), part.boundsMax.x());
+            minY[i] = Math.min(part.boundsMin.y(), part.boundsMax.y());
+            minZ[i] = Math.min(part.boundsMin.z(), part.boundsMax.z());
+            maxX[i] = Math.max(part.boundsMin.x(), part.boundsMax.x());
+            maxY[i] = Math.max(part.boundsMin.y(), part.boundsMax.y());
+            maxZ[i] = Math.max(part.boundsMin.z(), part.boundsMax.z());
+            heights[2 * numBounded] = minY[i];
+            heights[2 * numBounded + 1] = maxY[i];
+            boundedParts[numBounded++] = i;
+        }
+
+        Arrays.sort(heights, 0, 2 * numBounded);
+        int numBoundaries = 0;
+        for (int i = 0; i < 2 * numBounded; i++) {
+            if (numBoundaries == 0 || heights[i] != heights[numBoundaries - 1]) {
+                heights[numBoundaries++] = heights[i];
+            }
+        }
+        boundaries = Arrays.copyOf(heights, numBoundaries);
+
+        int numBands = Math.max(0, numBoundaries - 1);
+        bandParts = new int[numBands][];
+        for (int band = 0; band < numBands; band++) {
+            int[] overlappingParts = new int[numBounded];
+            int numOverlapping = 0;
+            for (int i = 0; i < numBounded; i++) {
+                int part = boundedParts[i];
+                if (minY[part] < boundaries[band + 1] && maxY[part] > boundaries[band]) {
+                    overlappingParts[numOverlapping++] = part;
+                }
+            }
+            bandParts[band] = Arrays.copyOf(overlappingParts, numOverlapping);
+        }
+    }
+
+    /**
+     * Gets the part hit at a point. Points outside of all bounding boxes hit the closest part at their height.
+     *
+     * @param localPoint The hit point in entity-local space.
+     * @return The index of the part, or -1 if no bounding box spans the height of the point.
+     */
+    int getPartAt(Vector3fc localPoint) {
+        if (bandParts.length == 0) {
+            return -1;
+        }
+        int band = Arrays.binarySearch(boundaries, localPoint.y());
+        if (band < 0) {
+            // Index of the last boundary below the point.
+            band = -band - 2;
+        }
+        band = Math.max(0, Math.min(bandParts.length - 1, band));
+
+        int closestPart = -1;
+        float closestDistance = Float.POSITIVE_INFINITY;
+        for (int part : bandParts[band]) {
+            float distance = getDistanceSquared(part, localPoint);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closestPart = part;
+            }
+        }
+        return closestPart;
+    }
+
+    /**
+     * Returns the squared distance from a point to the bounding box of a part, 0 if the point is inside it.
+     */
+    private float getDistanceSquared(int part, Vector3fc point) {
+        float dx = Math.max(0, Math.max(minX[part] - point.x(), point.x() - maxX[part]));
+        float dy = Math.max(0, Math.max(minY[part] - point.y(), point.y() - maxY[part]));
+        float dz = Math.max(0, Math.max(minZ[part] - point.z(), point.z() - maxZ[part]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+}
@@ -0,0 +1,45 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.asset;
+
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.gestalt.assets.Asset;
+import org.terasology.gestalt.assets.AssetType;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.gestalt.assets.module.annotations.RegisterAssetType;
+
+import java.util.Map;
+
+/**
+ * An anatomy shared by all the entities referencing it through {@link AnatomyComponent#definition}, compiled once per
+ * game into an {@link AnatomyLayout} by the {@link org.terasology.anatomy.AnatomyLayoutSystem}. Entities with a
+ * definition only store their injury state.
+ * <p>
+ * Reloading the asset replaces its parts. The layout system then compiles a new layout, whose parts are indexed in the
+ * order of their sorted ids like any other layout, and moves the injury state of the entities to the new indices by
+ * part ID.
+ */
+@RegisterAssetType(folderName = "anatomy", factoryClass = AnatomyDefinitionFactory.class)
+public class AnatomyDefinition extends Asset<AnatomyDefinitionData> {
+    private Map<String, AnatomyPartTag> parts;
+
+    public AnatomyDefinition(ResourceUrn urn, AssetType<?, AnatomyDefinitionData> assetType, AnatomyDefinitionData data) {
+        super(urn, assetType);
+        reload(data);
+    }
+
+    @Override
+    protected void doReload(AnatomyDefinitionData data) {
+        parts = data.parts;
+    }
+
+    /**
+     * @return The parts of the anatomy, mapped by ID. The returned map is replaced when the asset is reloaded, and must
+     * not be modified.
+     */
+    public Map<String, AnatomyPartTag> getParts() {
+        return parts;
+    }
+}
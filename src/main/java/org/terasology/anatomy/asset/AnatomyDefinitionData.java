@@ -0,0 +1,19 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.asset;
+
+import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.gestalt.assets.AssetData;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The data of an {@link AnatomyDefinition}, as loaded from an anatomy file.
+ */
+public class AnatomyDefinitionData implements AssetData {
+    /**
+     * Maps the ID of each part to the part.
+     */
+    public Map<String, AnatomyPartTag> parts = new HashMap<>();
+}
@@ -0,0 +1,17 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.asset;
+
+import org.terasology.gestalt.assets.AssetFactory;
+import org.terasology.gestalt.assets.AssetType;
+import org.terasology.gestalt.assets.ResourceUrn;
+
+/**
+ * Creates the {@link AnatomyDefinition} assets.
+ */
+public class AnatomyDefinitionFactory implements AssetFactory<AnatomyDefinition, AnatomyDefinitionData> {
+    @Override
+    public AnatomyDefinition build(ResourceUrn urn, AssetType<AnatomyDefinition, AnatomyDefinitionData> type, AnatomyDefinitionData data) {
+        return new AnatomyDefinition(urn, type, data);
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.asset;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonParseException;
+import org.joml.Vector3f;
+import org.terasology.anatomy.component.AnatomyPartTag;
+import org.terasology.gestalt.assets.ResourceUrn;
+import org.terasology.gestalt.assets.format.AbstractAssetFileFormat;
+import org.terasology.gestalt.assets.format.AssetDataFile;
+import org.terasology.gestalt.assets.module.annotations.RegisterAssetFileFormat;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads {@link AnatomyDefinition}s from .anatomy files. The file holds a "parts" object, mapping each part ID to a part
+ * in the same format as the parts of an anatomy component in a prefab.
+ */
+@RegisterAssetFileFormat
+public class AnatomyDefinitionFormat extends AbstractAssetFileFormat<AnatomyDefinitionData> {
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Vector3f.class, (JsonDeserializer<Vector3f>) (json, type, context) -> {
+                JsonArray array = json.getAsJsonArray();
+                if (array.size() != 3) {
+                    throw new JsonParseException("Expected 3 coordinates, got " + array);
+                }
+                return new Vector3f(array.get(0).getAsFloat(), array.get(1).getAsFloat(), array.get(2).getAsFloat());
+            })
+            .create();
+
+    public AnatomyDefinitionFormat() {
+        super("anatomy");
+    }
+
+    @Override
+    public AnatomyDefinitionData load(ResourceUrn urn, List<AssetDataFile> inputs) throws IOException {
+        try (Reader reader = new InputStreamReader(inputs.get(0).openStream(), StandardCharsets.UTF_8)) {
+            AnatomyDefinitionData data = gson.fromJson(reader, AnatomyDefinitionData.class);
+            if (data == null || data.parts == null) {
+                throw new IOException("No parts in anatomy definition " + urn);
+            }
+            for (Map.Entry<String, AnatomyPartTag> partEntry : data.parts.entrySet()) {
+                if (partEntry.getValue().id.isEmpty()) {
+                    partEntry.getValue().id = partEntry.getKey();
+                }
+            }
+            return data;
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to load anatomy definition " + urn, e);
+        }
+    }
+}
@@ -2,6 +2,9 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.component;
 
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.asset.AnatomyDefinition;
 import org.terasology.engine.network.Replicate;
 import org.terasology.gestalt.entitysystem.component.Component;
 
@@ -12,12 +15,34 @@ import java.util.Map;
  * This component defines the anatomical structure and abilities of a creature.
  */
 public class AnatomyComponent implements Component<AnatomyComponent> {
+    /**
+     * URN of the {@link AnatomyDefinition} shared by the entities with this anatomy, like "Anatomy:humanoid". If set,
+     * the parts are taken from the definition instead of {@link #parts}.
+     */
+    @Replicate
+    public String definition = "";
+
+    /**
+     * The parts of an anatomy without a definition. For an anatomy with a definition, this is set to a read-only view of
+     * the parts of the definition, shared by all the entities referencing it, when the component is activated.
+     */
     @Replicate
     public Map<String, AnatomyPartTag> parts = new HashMap<>();
 
+    /**
+     * The shared layout of the parts, resolved by the {@link AnatomyLayoutRegistry}. Not persisted or replicated.
+     */
+    public transient AnatomyLayout layout;
+
+    /**
+     * The definition of the anatomy, resolved by the {@link AnatomyLayoutRegistry}. Not persisted or replicated.
+     */
+    public transient AnatomyDefinition definitionAsset;
+
     @Override
     public void copyFrom(AnatomyComponent other) {
-        this.parts.clear();
+        this.definition = other.definition;
+        this.parts = new HashMap<>();
         other.parts.forEach((k, v) -> this.parts.put(k, v.copy()));
     }
 }
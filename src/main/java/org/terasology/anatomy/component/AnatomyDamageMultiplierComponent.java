@@ -0,0 +1,24 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.component;
+
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Added to a damage type prefab to define how much of its damage is dealt to each anatomy sub-system.
+ */
+public class AnatomyDamageMultiplierComponent implements Component<AnatomyDamageMultiplierComponent> {
+    /**
+     * Maps each sub-system, like "Skeletal" or "Circulatory", to the multiplier applied to the damage it receives.
+     */
+    public Map<String, Float> multipliers = new HashMap<>();
+
+    @Override
+    public void copyFrom(AnatomyDamageMultiplierComponent other) {
+        this.multipliers.clear();
+        this.multipliers.putAll(other.multipliers);
+    }
+}
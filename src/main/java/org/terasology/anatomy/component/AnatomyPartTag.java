@@ -3,10 +3,13 @@
 package org.terasology.anatomy.component;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.joml.Vector3f;
 import org.terasology.engine.network.Replicate;
 import org.terasology.reflection.MappedContainer;
 
 import java.util.List;
+import java.util.Map;
 
 @MappedContainer
 public class AnatomyPartTag {
@@ -33,12 +36,37 @@ public class AnatomyPartTag {
     @Replicate
     public List<String> abilities = Lists.newArrayList();
 
+    /**
+     * Relative likelihood of the part being hit by damage which isn't positional.
+     */
+    public float hitWeight = 1.0f;
+
+    /**
+     * Overrides the hit weight for particular damage types, like a higher weight of the legs for fall damage.
+     * Maps the damage type prefab name to the hit weight.
+     */
+    public Map<String, Float> damageTypeHitWeights = Maps.newHashMap();
+
+    /**
+     * Minimum corner of the bounding box of the part in entity-local space, used for positional damage.
+     */
+    public Vector3f boundsMin;
+
+    /**
+     * Maximum corner of the bounding box of the part in entity-local space, used for positional damage.
+     */
+    public Vector3f boundsMax;
+
     public AnatomyPartTag copy() {
         AnatomyPartTag newAnatomyPartTag = new AnatomyPartTag();
         newAnatomyPartTag.id = this.id;
         newAnatomyPartTag.name = this.name;
         newAnatomyPartTag.characteristics = Lists.newArrayList(this.characteristics);
         newAnatomyPartTag.abilities = Lists.newArrayList(this.abilities);
+        newAnatomyPartTag.hitWeight = this.hitWeight;
+        newAnatomyPartTag.damageTypeHitWeights = Maps.newHashMap(this.damageTypeHitWeights);
+        newAnatomyPartTag.boundsMin = this.boundsMin != null ? new Vector3f(this.boundsMin) : null;
+        newAnatomyPartTag.boundsMax = this.boundsMax != null ? new Vector3f(this.boundsMax) : null;
         return newAnatomyPartTag;
     }
 }
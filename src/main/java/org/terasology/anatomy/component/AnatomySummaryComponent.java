@@ -0,0 +1,101 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.component;
+
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.engine.network.Replicate;
+import org.terasology.gestalt.entitysystem.component.Component;
+
+import java.util.Arrays;
+
+/**
+ * This component contains a summary of the injuries of an entity, replicated to all the clients instead of the detailed
+ * injury components, which only the owner of the entity gets.
+ * <p>
+ * The summary holds the effect severity of each part in every sub-system, packed as {@link #BITS_PER_SLOT} bits per
+ * sub-system slot in one byte per part, and the bucket of the blood level.
+ */
+public class AnatomySummaryComponent implements Component<AnatomySummaryComponent> {
+    public static final int BITS_PER_SLOT = 2;
+    public static final int SLOT_COUNT = Byte.SIZE / BITS_PER_SLOT;
+    private static final int SLOT_MASK = (1 << BITS_PER_SLOT) - 1;
+
+    /**
+     * The packed effect severities of each part, indexed by the part indices of the anatomy layout.
+     */
+    @Replicate
+    public byte[] partSeverities = new byte[0];
+
+    /**
+     * The blood level bucket, from 0 when empty to {@link InjuredCirculatoryComponent#BLOOD_LEVEL_BUCKETS} when full.
+     */
+    @Replicate
+    public byte bloodLevelBucket = InjuredCirculatoryComponent.BLOOD_LEVEL_BUCKETS;
+
+    /**
+     * @param part The index of the part.
+     * @param slot The slot of the sub-system.
+     * @return The effect severity of the part in the sub-system.
+     */
+    public int getSeverity(int part, int slot) {
+        if (part >= partSeverities.length) {
+            return 0;
+        }
+        return (partSeverities[part] >> (slot * BITS_PER_SLOT)) & SLOT_MASK;
+    }
+
+    /**
+     * Sets the effect severity of a part in a sub-system, growing the summary to the part if needed.
+     *
+     * @param part The index of the part.
+     * @param slot The slot of the sub-system.
+     * @param severity The effect severity, at most {@link PartHealthTable#MAX_SEVERITY}.
+     * @return Whether the severity changed.
+     */
+    public boolean setSeverity(int part, int slot, int severity) {
+        if (getSeverity(part, slot) == severity) {
+            return false;
+        }
+        if (part >= partSeverities.length) {
+            partSeverities = Arrays.copyOf(partSeverities, part + 1);
+        }
+        int shift = slot * BITS_PER_SLOT;
+        partSeverities[part] = (byte) ((partSeverities[part] & ~(SLOT_MASK << shift)) | ((severity & SLOT_MASK) << shift));
+        return true;
+    }
+
+    /**
+     * Resets the effect severities of all the parts in a sub-system.
+     *
+     * @param slot The slot of the sub-system.
+     * @return Whether any severity changed.
+     */
+    public boolean clearSlot(int slot) {
+        boolean changed = false;
+        for (int part = 0; part < partSeverities.length; part++) {
+            changed |= setSeverity(part, slot, 0);
+        }
+        return changed;
+    }
+
+    /**
+     * @return Whether no part has an effect and the blood level is full.
+     */
+    public boolean isEmpty() {
+        if (bloodLevelBucket != InjuredCirculatoryComponent.BLOOD_LEVEL_BUCKETS) {
+            return false;
+        }
+        for (byte severities : partSeverities) {
+            if (severities != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void copyFrom(AnatomySummaryComponent other) {
+        this.partSeverities = Arrays.copyOf(other.partSeverities, other.partSeverities.length);
+        this.bloodLevelBucket = other.bloodLevelBucket;
+    }
+}
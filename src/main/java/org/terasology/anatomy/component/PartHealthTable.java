@@ -0,0 +1,471 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.component;
+
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.persistence.PartHealthTableTypeHandler;
+import org.terasology.math.TeraMath;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Container for the health details and effect severities of all the parts in a system, stored in primitive arrays
+ * indexed by the part indices of the entity's {@link org.terasology.anatomy.AnatomyLayout}.
+ * <p>
+ * The health of each part is stored as a time-anchored model: {@link #health} is the health of the part at
+ * {@link #anchorTime}, from which it regenerates with {@link #regenRate} until it reaches {@link #maxHealth}. The
+ * current health is computed on demand using {@link #getHealth(int, long)}, so nothing has to happen between two reads.
+ * <p>
+ * Changes to the parts are made in place and tracked in {@link #dirtyParts}, so that only the changed parts are sent to
+ * the clients instead of the whole table. Only discontinuities of the health, like damage or healing, are sent: the
+ * clients extrapolate the regeneration and derive the severities from the health themselves.
+ * <p>
+ * Tables are persisted and replicated in a compact binary form by the {@link PartHealthTableTypeHandler}, which only
+ * stores the injured parts, keyed by part ID, and no derivable data. The parts are moved to their layout indices, and
+ * the threshold times and severities are derived again, when the injury component is activated. When the anatomy
+ * definition of the entity is reloaded, the parts are moved to their new indices in place.
+ */
+public class PartHealthTable {
+    public static final int DEFAULT_MAX_HEALTH = 100;
+    public static final float DEFAULT_REGEN_RATE = 1.0f;
+    public static final float DEFAULT_WAIT_BEFORE_REGEN = 10.0f;
+    public static final int MAX_SEVERITY = 3;
+
+    /**
+     * Size in bytes of the delta of a single part: index, health and anchor time.
+     */
+    private static final int PART_DELTA_SIZE = Short.BYTES + Integer.BYTES + Long.BYTES;
+
+    public float[] regenRate = new float[0];
+
+    /**
+     * Health of each part at its anchor time.
+     */
+    public int[] health = new int[0];
+
+    public int[] maxHealth = new int[0];
+
+    /**
+     * Game time in ms at which each part regenerates its first health point after being damaged.
+     */
+    public long[] anchorTime = new long[0];
+
+    /**
+     * Game time in ms at which the health of each part rises above its next severity threshold. Not persisted or
+     * replicated.
+     */
+    public long[] nextThresholdTime = new long[0];
+
+    public float[] waitBeforeRegen = new float[0];
+
+    /**
+     * Severity of the effect on each part, 0 if the part is unaffected. Not persisted or replicated.
+     */
+    public byte[] severity = new byte[0];
+
+    /**
+     * Number of parts with each severity, indexed by severity.
+     */
+    public int[] severityCounts = new int[MAX_SEVERITY + 1];
+
+    /**
+     * Parts whose anchored health changed since the table was last replicated. Not persisted or replicated.
+     */
+    public transient BitSet dirtyParts = new BitSet();
+
+    /**
+     * The layout the part indices refer to, whose part IDs the table is saved with. Null until the table is bound to the
+     * layout of its entity. Not persisted or replicated.
+     */
+    public transient AnatomyLayout layout;
+
+    /**
+     * The ID of each part of a loaded table, which is keyed by part ID, until the parts are moved to their layout
+     * indices by {@link #remapLoadedParts(AnatomyLayout)}. Null otherwise.
+     */
+    public transient String[] loadedPartIds;
+
+    /**
+     * Whether the table was loaded from the legacy map of part health details.
+     */
+    public transient boolean legacyFormat;
+
+    public PartHealthTable() {
+    }
+
+    /**
+     * @return The number of parts in the table.
+     */
+    public int size() {
+        return health.length;
+    }
+
+    /**
+     * Grows the table to hold a number of parts, giving the new parts full default health.
+     *
+     * @param size The number of parts in the entity's layout.
+     */
+    public void ensureSize(int size) {
+        int oldSize = size();
+        if (size <= oldSize) {
+            return;
+        }
+        regenRate = Arrays.copyOf(regenRate, size);
+        health = Arrays.copyOf(health, size);
+        maxHealth = Arrays.copyOf(maxHealth, size);
+        anchorTime = Arrays.copyOf(anchorTime, size);
+        nextThresholdTime = Arrays.copyOf(nextThresholdTime, size);
+        waitBeforeRegen = Arrays.copyOf(waitBeforeRegen, size);
+        severity = Arrays.copyOf(severity, size);
+        severityCounts[0] += size - oldSize;
+        Arrays.fill(regenRate, oldSize, size, DEFAULT_REGEN_RATE);
+        Arrays.fill(health, oldSize, size, DEFAULT_MAX_HEALTH);
+        Arrays.fill(maxHealth, oldSize, size, DEFAULT_MAX_HEALTH);
+        Arrays.fill(nextThresholdTime, oldSize, size, Long.MAX_VALUE);
+        Arrays.fill(waitBeforeRegen, oldSize, size, DEFAULT_WAIT_BEFORE_REGEN);
+        dirtyParts.set(oldSize, size);
+    }
+
+    /**
+     * Binds the table to the layout of its entity, growing it to hold all the parts of the layout.
+     *
+     * @param layout The layout of the entity.
+     */
+    public void bindLayout(AnatomyLayout layout) {
+        ensureSize(layout.size());
+        this.layout = layout;
+    }
+
+    /**
+     * Gets the health of a part at a particular game time.
+     *
+     * @param part The index of the part.
+     * @param gameTime The game time in ms.
+     * @return The health of the part.
+     */
+    public int getHealth(int part, long gameTime) {
+        if (gameTime < anchorTime[part] || regenRate[part] <= 0 || health[part] >= maxHealth[part]) {
+            return health[part];
+        }
+        long regenerated = (long) ((gameTime - anchorTime[part]) * regenRate[part] / 1000) + 1;
+        return (int) Math.min(maxHealth[part], health[part] + regenerated);
+    }
+
+    /**
+     * Gets the game time at which a part regenerates to a particular health.
+     *
+     * @param part The index of the part.
+     * @param targetHealth The health to regenerate to, which must be higher than the anchored health.
+     * @return The game time in ms, or {@link Long#MAX_VALUE} if the part never reaches the health.
+     */
+    public long getTimeOfHealth(int part, int targetHealth) {
+        if (regenRate[part] <= 0 || targetHealth > maxHealth[part]) {
+            return Long.MAX_VALUE;
+        }
+        return anchorTime[part] + (long) Math.ceil((targetHealth - health[part] - 1) * 1000 / regenRate[part]);
+    }
+
+    /**
+     * Gets the game time at which the health of a part rises above the next of the given thresholds, or reaches the
+     * max health of the part if it is above all of them.
+     *
+     * @param part The index of the part.
+     * @param gameTime The current game time in ms.
+     * @param thresholds The health fractions at which the severity of an effect on the part changes.
+     * @return The game time in ms, or {@link Long#MAX_VALUE} if the part is healed or doesn't regenerate.
+     */
+    public long getNextThresholdTime(int part, long gameTime, float[] thresholds) {
+        int currentHealth = getHealth(part, gameTime);
+        if (currentHealth >= maxHealth[part]) {
+            return Long.MAX_VALUE;
+        }
+        int targetHealth = maxHealth[part];
+        for (float threshold : thresholds) {
+            // Lowest health at which the health fraction is above the threshold.
+            int thresholdHealth = TeraMath.floorToInt(threshold * maxHealth[part]) + 1;
+            if (thresholdHealth > currentHealth && thresholdHealth < targetHealth) {
+                targetHealth = thresholdHealth;
+            }
+        }
+        return getTimeOfHealth(part, targetHealth);
+    }
+
+    /**
+     * Computes the next threshold time of every part, like for a table replicated without them.
+     *
+     * @param gameTime The current game time in ms.
+     * @param thresholds The health fractions at which the severity of an effect on the parts changes.
+     * @return The earliest next threshold time.
+     */
+    public long scheduleThresholds(long gameTime, float[] thresholds) {
+        if (nextThresholdTime.length != size()) {
+            nextThresholdTime = new long[size()];
+        }
+        for (int part = 0; part < size(); part++) {
+            nextThresholdTime[part] = getNextThresholdTime(part, gameTime, thresholds);
+        }
+        return getEarliestThresholdTime();
+    }
+
+    /**
+     * @return The earliest next threshold time of the parts, or {@link Long#MAX_VALUE} if none will be crossed.
+     */
+    public long getEarliestThresholdTime() {
+        long earliestThresholdTime = Long.MAX_VALUE;
+        for (long partThresholdTime : nextThresholdTime) {
+            earliestThresholdTime = Math.min(earliestThresholdTime, partThresholdTime);
+        }
+        return earliestThresholdTime;
+    }
+
+    /**
+     * Checks whether all the parts are at max health and unaffected at a particular game time.
+     *
+     * @param gameTime The game time in ms.
+     * @return Whether there is no injury left in the table.
+     */
+    public boolean isHealed(long gameTime) {
+        if (severityCounts[0] != size()) {
+            return false;
+        }
+        for (int part = 0; part < size(); part++) {
+            if (getHealth(part, gameTime) < maxHealth[part]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deducts damage from the current health of a part and re-anchors its regeneration after the wait before regen.
+     *
+     * @param part The index of the part.
+     * @param amount The amount of damage dealt.
+     * @param gameTime The current game time in ms.
+     */
+    public void damage(int part, int amount, long gameTime) {
+        health[part] = TeraMath.clamp(getHealth(part, gameTime) - amount, 0, maxHealth[part]);
+        anchorTime[part] = gameTime + TeraMath.floorToInt(waitBeforeRegen[part] * 1000);
+        dirtyParts.set(part);
+    }
+
+    /**
+     * Restores a part to full health.
+     *
+     * @param part The index of the part.
+     */
+    public void heal(int part) {
+        health[part] = maxHealth[part];
+        nextThresholdTime[part] = Long.MAX_VALUE;
+        dirtyParts.set(part);
+    }
+
+    /**
+     * Changes the severity of the effect on a part, keeping the severity counts up to date. Severities are derived from
+     * the health, so changing them doesn't make the part dirty.
+     *
+     * @param part The index of the part.
+     * @param newSeverity The new severity, 0 if the part is unaffected.
+     * @return The previous severity of the effect on the part.
+     */
+    public int setSeverity(int part, int newSeverity) {
+        int oldSeverity = severity[part];
+        if (oldSeverity != newSeverity) {
+            severity[part] = (byte) newSeverity;
+            severityCounts[oldSeverity]--;
+            severityCounts[newSeverity]++;
+        }
+        return oldSeverity;
+    }
+
+    /**
+     * @return Whether the health of any part changed since the table was last replicated.
+     */
+    public boolean isDirty() {
+        return !dirtyParts.isEmpty();
+    }
+
+    /**
+     * @return The number of bytes needed by {@link #writeDelta(ByteBuffer)}.
+     */
+    public int getDeltaSize() {
+        return Short.BYTES + dirtyParts.cardinality() * PART_DELTA_SIZE;
+    }
+
+    /**
+     * Writes the anchored health of the dirty parts to a buffer and clears the dirty parts.
+     *
+     * @param buffer The buffer to write to, with at least {@link #getDeltaSize()} bytes remaining.
+     */
+    public void writeDelta(ByteBuffer buffer) {
+        buffer.putShort((short) dirtyParts.cardinality());
+        for (int part = dirtyParts.nextSetBit(0); part >= 0; part = dirtyParts.nextSetBit(part + 1)) {
+            buffer.putShort((short) part);
+            buffer.putInt(health[part]);
+            buffer.putLong(anchorTime[part]);
+        }
+        dirtyParts.clear();
+    }
+
+    /**
+     * Applies a delta written by {@link #writeDelta(ByteBuffer)} to the table, growing it if needed.
+     *
+     * @param buffer The buffer to read from.
+     * @return The parts in the delta, whose severities must be derived again.
+     */
+    public BitSet applyDelta(ByteBuffer buffer) {
+        BitSet appliedParts = new BitSet();
+        int count = buffer.getShort();
+        for (int i = 0; i < count; i++) {
+            int part = buffer.getShort();
+            ensureSize(part + 1);
+            health[part] = buffer.getInt();
+            anchorTime[part] = buffer.getLong();
+            appliedParts.set(part);
+        }
+        dirtyParts.clear();
+        return appliedParts;
+    }
+
+    /**
+     * Moves the parts of a loaded table to their indices in the layout of the entity, and binds the table to the layout.
+     * The parts which are no longer in the layout are dropped.
+     *
+     * @param layout The layout of the entity.
+     */
+    public void remapLoadedParts(AnatomyLayout layout) {
+        remapParts(loadedPartIds, layout);
+        loadedPartIds = null;
+    }
+
+    /**
+     * Moves the parts from their indices in the previous layout of the entity to their indices in its new layout, after
+     * its anatomy definition was reloaded. The parts which are no longer in the layout are dropped, and the new parts
+     * get full default health.
+     *
+     * @param previousLayout The layout the table is indexed by.
+     * @param layout The new layout of the entity.
+     */
+    public void remapParts(AnatomyLayout previousLayout, AnatomyLayout layout) {
+        String[] partIds = new String[Math.min(size(), previousLayout.size())];
+        for (int part = 0; part < partIds.length; part++) {
+            partIds[part] = previousLayout.getPartId(part);
+        }
+        remapParts(partIds, layout);
+    }
+
+    /**
+     * Moves the parts to their indices in a layout in place, and binds the table to it. The arrays are only reallocated
+     * if the number of parts changes. The severities move with their parts.
+     *
+     * @param partIds The ID of each part of the table.
+     * @param layout The layout to move the parts to.
+     */
+    private void remapParts(String[] partIds, AnatomyLayout layout) {
+        int size = layout.size();
+        ensureSize(size);
+        int capacity = size();
+        int[] targets = new int[capacity];
+        Arrays.fill(targets, -1);
+        BitSet usedTargets = new BitSet(capacity);
+        for (int part = 0; part < partIds.length; part++) {
+            int target = layout.getPartIndex(partIds[part]);
+            if (target >= 0) {
+                targets[part] = target;
+                usedTargets.set(target);
+            }
+        }
+        // The parts which aren't in the layout fill the remaining indices, and are reset once moved.
+        BitSet resetParts = new BitSet(capacity);
+        int freeTarget = usedTargets.nextClearBit(0);
+        for (int part = 0; part < capacity; part++) {
+            if (targets[part] < 0) {
+                targets[part] = freeTarget;
+                resetParts.set(freeTarget);
+                freeTarget = usedTargets.nextClearBit(freeTarget + 1);
+            }
+        }
+        for (int part = 0; part < capacity; part++) {
+            while (targets[part] != part) {
+                int target = targets[part];
+                swapParts(part, target);
+                targets[part] = targets[target];
+                targets[target] = target;
+            }
+        }
+        for (int part = resetParts.nextSetBit(0); part >= 0; part = resetParts.nextSetBit(part + 1)) {
+            resetPart(part);
+        }
+        if (capacity > size) {
+            severityCounts[0] -= capacity - size;
+            regenRate = Arrays.copyOf(regenRate, size);
+            health = Arrays.copyOf(health, size);
+            maxHealth = Arrays.copyOf(maxHealth, size);
+            anchorTime = Arrays.copyOf(anchorTime, size);
+            nextThresholdTime = Arrays.copyOf(nextThresholdTime, size);
+            waitBeforeRegen = Arrays.copyOf(waitBeforeRegen, size);
+            severity = Arrays.copyOf(severity, size);
+            dirtyParts.clear(size, capacity);
+        }
+        this.layout = layout;
+    }
+
+    private void swapParts(int part, int otherPart) {
+        float regenRateValue = regenRate[part];
+        regenRate[part] = regenRate[otherPart];
+        regenRate[otherPart] = regenRateValue;
+        int healthValue = health[part];
+        health[part] = health[otherPart];
+        health[otherPart] = healthValue;
+        int maxHealthValue = maxHealth[part];
+        maxHealth[part] = maxHealth[otherPart];
+        maxHealth[otherPart] = maxHealthValue;
+        long anchorTimeValue = anchorTime[part];
+        anchorTime[part] = anchorTime[otherPart];
+        anchorTime[otherPart] = anchorTimeValue;
+        long nextThresholdTimeValue = nextThresholdTime[part];
+        nextThresholdTime[part] = nextThresholdTime[otherPart];
+        nextThresholdTime[otherPart] = nextThresholdTimeValue;
+        float waitBeforeRegenValue = waitBeforeRegen[part];
+        waitBeforeRegen[part] = waitBeforeRegen[otherPart];
+        waitBeforeRegen[otherPart] = waitBeforeRegenValue;
+        byte severityValue = severity[part];
+        severity[part] = severity[otherPart];
+        severity[otherPart] = severityValue;
+        boolean dirty = dirtyParts.get(part);
+        dirtyParts.set(part, dirtyParts.get(otherPart));
+        dirtyParts.set(otherPart, dirty);
+    }
+
+    /**
+     * Gives a part full default health and no effect.
+     */
+    private void resetPart(int part) {
+        regenRate[part] = DEFAULT_REGEN_RATE;
+        health[part] = DEFAULT_MAX_HEALTH;
+        maxHealth[part] = DEFAULT_MAX_HEALTH;
+        anchorTime[part] = 0;
+        nextThresholdTime[part] = Long.MAX_VALUE;
+        waitBeforeRegen[part] = DEFAULT_WAIT_BEFORE_REGEN;
+        setSeverity(part, 0);
+        dirtyParts.clear(part);
+    }
+
+    public PartHealthTable copy() {
+        PartHealthTable newTable = new PartHealthTable();
+        newTable.regenRate = this.regenRate.clone();
+        newTable.health = this.health.clone();
+        newTable.maxHealth = this.maxHealth.clone();
+        newTable.anchorTime = this.anchorTime.clone();
+        newTable.nextThresholdTime = this.nextThresholdTime.clone();
+        newTable.waitBeforeRegen = this.waitBeforeRegen.clone();
+        newTable.severity = this.severity.clone();
+        newTable.severityCounts = this.severityCounts.clone();
+        newTable.layout = this.layout;
+        newTable.loadedPartIds = this.loadedPartIds != null ? this.loadedPartIds.clone() : null;
+        newTable.legacyFormat = this.legacyFormat;
+        return newTable;
+    }
+}
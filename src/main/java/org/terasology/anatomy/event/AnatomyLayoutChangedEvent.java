@@ -0,0 +1,33 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.event;
+
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * This event is sent to an entity when the anatomy definition it references is reloaded with a new
+ * {@link AnatomyLayout}. The part indices stored by the entity are those of the previous layout until the handlers move
+ * them to the new one by part ID.
+ */
+public class AnatomyLayoutChangedEvent implements Event {
+    private final AnatomyLayout previousLayout;
+    private final AnatomyLayout layout;
+
+    /**
+     * @param previousLayout The layout the part indices of the entity refer to.
+     * @param layout The new layout of the entity.
+     */
+    public AnatomyLayoutChangedEvent(AnatomyLayout previousLayout, AnatomyLayout layout) {
+        this.previousLayout = previousLayout;
+        this.layout = layout;
+    }
+
+    public AnatomyLayout getPreviousLayout() {
+        return previousLayout;
+    }
+
+    public AnatomyLayout getLayout() {
+        return layout;
+    }
+}
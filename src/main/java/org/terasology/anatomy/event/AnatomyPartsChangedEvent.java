@@ -0,0 +1,44 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.event;
+
+import org.terasology.gestalt.entitysystem.event.Event;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This event is sent once per tick to an entity whose injury state changed during the tick, with the indices of the
+ * changed parts of each sub-system. It may have no changed part, if only the state of the whole entity changed. The
+ * part indices are those of the entity's {@link org.terasology.anatomy.AnatomyLayout}.
+ */
+public class AnatomyPartsChangedEvent implements Event {
+    private static final BitSet NO_PARTS = new BitSet();
+
+    private final Map<String, BitSet> changedParts;
+
+    /**
+     * @param changedParts The indices of the changed parts, mapped by sub-system name.
+     */
+    public AnatomyPartsChangedEvent(Map<String, BitSet> changedParts) {
+        this.changedParts = changedParts;
+    }
+
+    /**
+     * @return The names of the sub-systems with changed parts.
+     */
+    public Set<String> getSubsystems() {
+        return changedParts.keySet();
+    }
+
+    /**
+     * Gets the parts of a sub-system which changed. The returned set must not be modified.
+     *
+     * @param subsystem The name of the sub-system.
+     * @return The indices of the changed parts, empty if no part of the sub-system changed.
+     */
+    public BitSet getChangedParts(String subsystem) {
+        return changedParts.getOrDefault(subsystem, NO_PARTS);
+    }
+}
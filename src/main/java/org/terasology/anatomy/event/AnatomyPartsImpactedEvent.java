@@ -0,0 +1,54 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.event;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * This event is sent by the {@link org.terasology.anatomy.AnatomyDamageManager} when several anatomy parts of an entity
+ * are damaged at once. The part indices are those of the entity's {@link org.terasology.anatomy.AnatomyLayout}.
+ */
+public class AnatomyPartsImpactedEvent implements Event {
+    private final int[] parts;
+    private final int[] amounts;
+    private final Prefab[] damageTypes;
+    private final EntityRef instigator;
+
+    /**
+     * @param parts The indices of the parts hit.
+     * @param amounts The amount of damage dealt by each hit.
+     * @param damageTypes The type of damage dealt by each hit.
+     * @param instigator The entity which caused the damage.
+     */
+    public AnatomyPartsImpactedEvent(int[] parts, int[] amounts, Prefab[] damageTypes, EntityRef instigator) {
+        this.parts = parts;
+        this.amounts = amounts;
+        this.damageTypes = damageTypes;
+        this.instigator = instigator;
+    }
+
+    /**
+     * @return The number of hits.
+     */
+    public int size() {
+        return parts.length;
+    }
+
+    public int getPart(int hit) {
+        return parts[hit];
+    }
+
+    public int getAmount(int hit) {
+        return amounts[hit];
+    }
+
+    public Prefab getDamageType(int hit) {
+        return damageTypes[hit];
+    }
+
+    public EntityRef getInstigator() {
+        return instigator;
+    }
+}
@@ -0,0 +1,60 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.event;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.gestalt.entitysystem.event.Event;
+
+/**
+ * Send this event to an entity instead of a {@link org.terasology.module.health.events.DoDamageEvent} to damage it at
+ * a particular point, like the impact point of a projectile or melee attack. The damage is dealt to the entity's health
+ * as usual, and allocated to the anatomy part at the hit point if the entity has an anatomy.
+ */
+public class DoPositionalDamageEvent implements Event {
+    private int amount;
+    private Prefab damageType;
+    private EntityRef instigator;
+    private EntityRef directCause;
+    private Vector3f hitPoint;
+
+    public DoPositionalDamageEvent() {
+    }
+
+    /**
+     * @param amount The amount of damage being caused.
+     * @param damageType The type of damage being dealt.
+     * @param instigator The entity which caused the damage.
+     * @param directCause The tool used for causing the damage.
+     * @param hitPoint The hit point in world space.
+     */
+    public DoPositionalDamageEvent(int amount, Prefab damageType, EntityRef instigator, EntityRef directCause, Vector3fc hitPoint) {
+        this.amount = amount;
+        this.damageType = damageType;
+        this.instigator = instigator;
+        this.directCause = directCause;
+        this.hitPoint = new Vector3f(hitPoint);
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public Prefab getDamageType() {
+        return damageType;
+    }
+
+    public EntityRef getInstigator() {
+        return instigator;
+    }
+
+    public EntityRef getDirectCause() {
+        return directCause;
+    }
+
+    public Vector3fc getHitPoint() {
+        return hitPoint;
+    }
+}
@@ -0,0 +1,251 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.anatomy.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.anatomy.component.PartHealthTable;
+import org.terasology.engine.persistence.typeHandling.RegisterTypeHandler;
+import org.terasology.persistence.typeHandling.PersistedData;
+import org.terasology.persistence.typeHandling.PersistedDataMap;
+import org.terasology.persistence.typeHandling.PersistedDataSerializer;
+import org.terasology.persistence.typeHandling.TypeHandler;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Serializes a {@link PartHealthTable} into a compact binary form, used both in world saves and for replication.
+ * <p>
+ * Only the parts which are injured or differ from the defaults are stored, by part ID, and no derivable data is stored:
+ * the threshold times and severities are derived again from the healths. The parts are keyed by ID rather than by
+ * index, so that a table loaded with another version of the anatomy is moved to the right indices, like the legacy
+ * format, once the injury component is activated. The format is:
+ * <pre>
+ * byte  version
+ * short number of stored parts
+ * for each stored part:
+ *   short length of the part ID, followed by the part ID in UTF-8
+ *   byte  flags
+ *   int   max health          if {@link #CUSTOM_MAX_HEALTH}
+ *   float regen rate          if {@link #CUSTOM_REGEN_RATE}
+ *   float wait before regen   if {@link #CUSTOM_WAIT_BEFORE_REGEN}
+ *   int   health, long anchor time   if {@link #INJURED}
+ * </pre>
+ * Tables saved in the legacy format, a map of part health details keyed by part ID, are migrated losslessly when they
+ * are loaded.
+ */
+@RegisterTypeHandler
+public class PartHealthTableTypeHandler extends TypeHandler<PartHealthTable> {
+    private static final Logger logger = LoggerFactory.getLogger(PartHealthTableTypeHandler.class);
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = Byte.BYTES + Short.BYTES;
+    private static final int PART_HEADER_SIZE = Short.BYTES + Byte.BYTES;
+
+    private static final int CUSTOM_MAX_HEALTH = 1;
+    private static final int CUSTOM_REGEN_RATE = 1 << 1;
+    private static final int CUSTOM_WAIT_BEFORE_REGEN = 1 << 2;
+    private static final int INJURED = 1 << 3;
+
+    @Override
+    protected PersistedData serializeNonNull(PartHealthTable table, PersistedDataSerializer serializer) {
+        int[] flags = new int[table.size()];
+        byte[][] partIds = new byte[table.size()][];
+        int storedParts = 0;
+        int unknownParts = 0;
+        int size = HEADER_SIZE;
+        for (int part = 0; part < table.size(); part++) {
+            flags[part] = getFlags(table, part);
+            if (flags[part] == 0) {
+                continue;
+            }
+            String partId = getPartId(table, part);
+            if (partId == null) {
+                flags[part] = 0;
+                unknownParts++;
+                continue;
+            }
+            partIds[part] = partId.getBytes(StandardCharsets.UTF_8);
+            storedParts++;
+            size += partIds[part].length + getStoredSize(flags[part]);
+        }
+        if (unknownParts > 0) {
+            logger.warn("Dropping {} injured parts of an anatomy health table which isn't bound to a layout", unknownParts);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(FORMAT_VERSION);
+        buffer.putShort((short) storedParts);
+        for (int part = 0; part < table.size(); part++) {
+            if (flags[part] == 0) {
+                continue;
+            }
+            buffer.putShort((short) partIds[part].length);
+            buffer.put(partIds[part]);
+            buffer.put((byte) flags[part]);
+            if ((flags[part] & CUSTOM_MAX_HEALTH) != 0) {
+                buffer.putInt(table.maxHealth[part]);
+            }
+            if ((flags[part] & CUSTOM_REGEN_RATE) != 0) {
+                buffer.putFloat(table.regenRate[part]);
+            }
+            if ((flags[part] & CUSTOM_WAIT_BEFORE_REGEN) != 0) {
+                buffer.putFloat(table.waitBeforeRegen[part]);
+            }
+            if ((flags[part] & INJURED) != 0) {
+                buffer.putInt(table.health[part]);
+                buffer.putLong(table.anchorTime[part]);
+            }
+        }
+        return serializer.serialize(buffer.array());
+    }
+
+    @Override
+    public Optional<PartHealthTable> deserialize(PersistedData data) {
+        try {
+            if (data.isBytes()) {
+                return readCompact(ByteBuffer.wrap(data.getAsBytes()));
+            }
+            if (data.isValueMap()) {
+                return Optional.of(readLegacy(data.getAsValueMap()));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalStateException
+                 | ClassCastException e) {
+            logger.warn("Failed to load an anatomy health table, the injuries are reset", e);
+            return Optional.empty();
+        }
+        logger.warn("Failed to load an anatomy health table stored as {}, the injuries are reset", data);
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the ID of a part of a table, from the layout it is bound to or the IDs it was loaded with.
+     *
+     * @return The ID of the part, or null if it isn't known.
+     */
+    private String getPartId(PartHealthTable table, int part) {
+        if (table.layout != null && part < table.layout.size()) {
+            return table.layout.getPartId(part);
+        }
+        if (table.loadedPartIds != null && part < table.loadedPartIds.length) {
+            return table.loadedPartIds[part];
+        }
+        return null;
+    }
+
+    private int getFlags(PartHealthTable table, int part) {
+        int flags = 0;
+        if (table.maxHealth[part] != PartHealthTable.DEFAULT_MAX_HEALTH) {
+            flags |= CUSTOM_MAX_HEALTH;
+        }
+        if (table.regenRate[part] != PartHealthTable.DEFAULT_REGEN_RATE) {
+            flags |= CUSTOM_REGEN_RATE;
+        }
+        if (table.waitBeforeRegen[part] != PartHealthTable.DEFAULT_WAIT_BEFORE_REGEN) {
+            flags |= CUSTOM_WAIT_BEFORE_REGEN;
+        }
+        // The anchor time doesn't matter once the anchored health is full.
+        if (table.health[part] < table.maxHealth[part]) {
+            flags |= INJURED;
+        }
+        return flags;
+    }
+
+    private int getStoredSize(int flags) {
+        int size = PART_HEADER_SIZE;
+        if ((flags & CUSTOM_MAX_HEALTH) != 0) {
+            size += Integer.BYTES;
+        }
+        if ((flags & CUSTOM_REGEN_RATE) != 0) {
+            size += Float.BYTES;
+        }
+        if ((flags & CUSTOM_WAIT_BEFORE_REGEN) != 0) {
+            size += Float.BYTES;
+        }
+        if ((flags & INJURED) != 0) {
+            size += Integer.BYTES + Long.BYTES;
+        }
+        return size;
+    }
+
+    private Optional<PartHealthTable> readCompact(ByteBuffer buffer) {
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION) {
+            logger.warn("Unknown anatomy health table format version {}, the injuries are reset", version);
+            return Optional.empty();
+        }
+        int storedParts = buffer.getShort();
+        PartHealthTable table = new PartHealthTable();
+        table.ensureSize(storedParts);
+        String[] partIds = new String[storedParts];
+        for (int part = 0; part < storedParts; part++) {
+            byte[] partId = new byte[buffer.getShort()];
+            buffer.get(partId);
+            partIds[part] = new String(partId, StandardCharsets.UTF_8);
+            readPart(buffer, table, part);
+        }
+        table.loadedPartIds = partIds;
+        table.dirtyParts.clear();
+        return Optional.of(table);
+    }
+
+    /**
+     * Reads the flags and the stored values of a part.
+     */
+    private void readPart(ByteBuffer buffer, PartHealthTable table, int part) {
+        int flags = buffer.get();
+        if ((flags & CUSTOM_MAX_HEALTH) != 0) {
+            table.maxHealth[part] = buffer.getInt();
+            table.health[part] = table.maxHealth[part];
+        }
+        if ((flags & CUSTOM_REGEN_RATE) != 0) {
+            table.regenRate[part] = buffer.getFloat();
+        }
+        if ((flags & CUSTOM_WAIT_BEFORE_REGEN) != 0) {
+            table.waitBeforeRegen[part] = buffer.getFloat();
+        }
+        if ((flags & INJURED) != 0) {
+            table.health[part] = buffer.getInt();
+            table.anchorTime[part] = buffer.getLong();
+        }
+    }
+
+    /**
+     * Reads a table saved in the legacy format, a map of part health details keyed by part ID. The time of the next
+     * regen tick of a part is the time at which it regenerates its next health point, which is its anchor time.
+     */
+    private PartHealthTable readLegacy(PersistedDataMap map) {
+        Set<Map.Entry<String, PersistedData>> entries = map.entrySet();
+        PartHealthTable table = new PartHealthTable();
+        table.ensureSize(entries.size());
+        String[] partIds = new String[entries.size()];
+        int part = 0;
+        for (Map.Entry<String, PersistedData> entry : entries) {
+            partIds[part] = entry.getKey();
+            PersistedDataMap details = entry.getValue().getAsValueMap();
+            if (details.has("maxHealth")) {
+                table.maxHealth[part] = details.getAsInteger("maxHealth");
+            }
+            table.health[part] = details.has("health") ? details.getAsInteger("health") : table.maxHealth[part];
+            if (details.has("regenRate")) {
+                table.regenRate[part] = details.getAsFloat("regenRate");
+            }
+            if (details.has("waitBeforeRegen")) {
+                table.waitBeforeRegen[part] = details.getAsFloat("waitBeforeRegen");
+            }
+            if (details.has("nextRegenTick")) {
+                table.anchorTime[part] = details.getAsLong("nextRegenTick");
+            }
+            part++;
+        }
+        table.loadedPartIds = partIds;
+        table.legacyFormat = true;
+        table.dirtyParts.clear();
+        return table;
+    }
+}
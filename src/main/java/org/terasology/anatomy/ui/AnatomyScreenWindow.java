@@ -2,109 +2,247 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.anatomy.ui;
 
-import org.terasology.anatomy.event.AnatomyStatusGatheringEvent;
+import org.terasology.anatomy.AnatomyCirculation.CirculatoryHealthSystem;
+import org.terasology.anatomy.AnatomyCirculation.CirculatorySystem;
+import org.terasology.anatomy.AnatomyCirculation.component.InjuredCirculatoryComponent;
+import org.terasology.anatomy.AnatomyClock;
+import org.terasology.anatomy.AnatomyEffect;
+import org.terasology.anatomy.AnatomyLayout;
+import org.terasology.anatomy.AnatomyLayoutRegistry;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalHealthSystem;
+import org.terasology.anatomy.AnatomySkeleton.SkeletalSystem;
+import org.terasology.anatomy.AnatomySkeleton.component.InjuredBoneComponent;
+import org.terasology.anatomy.AnatomyStatusListener;
+import org.terasology.anatomy.AnatomyStatusService;
+import org.terasology.anatomy.component.AnatomyComponent;
+import org.terasology.anatomy.component.AnatomySummaryComponent;
+import org.terasology.anatomy.component.PartHealthTable;
 import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.logic.characters.CharacterComponent;
 import org.terasology.engine.logic.players.LocalPlayer;
 import org.terasology.engine.registry.CoreRegistry;
 import org.terasology.engine.rendering.nui.BaseInteractionScreen;
 import org.terasology.engine.utilities.Assets;
+import org.terasology.nui.Color;
 import org.terasology.nui.databinding.ReadOnlyBinding;
 import org.terasology.nui.skin.UISkin;
+import org.terasology.nui.skin.UISkinBuilder;
 import org.terasology.nui.widgets.UILabel;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * This represents the Anatomy Screen, which contains information about the effects on the player.
+ * This represents the Anatomy Screen, which contains information about the effects on an entity, the player by default.
+ * <p>
+ * The labels of the parts are indexed once, and only the labels of the parts which change are updated while the screen
+ * is open. The regeneration of a part shows when its health crosses a severity threshold, which marks the part as
+ * changed. Each label is colored along a gradient from red to green with the health of its part.
  */
-public class AnatomyScreenWindow extends BaseInteractionScreen {
+public class AnatomyScreenWindow extends BaseInteractionScreen implements AnatomyStatusListener {
     private static final String ANATOMY_PART_PREFIX = "Anatomy:";
+    private static final int GRADIENT_STEPS = 10;
+
     private final UISkin greenTextSkin = Assets.getSkin("Anatomy:greenText").get();
     private final UISkin redTextSkin = Assets.getSkin("Anatomy:redText").get();
-    private EntityRef player = EntityRef.NULL;
+
+    /**
+     * Skins of the labels from no health to full health.
+     */
+    private final UISkin[] gradientSkins = new UISkin[GRADIENT_STEPS + 1];
+
+    /**
+     * Maps the ID of each part to its label.
+     */
+    private final Map<String, UILabel> partLabels = new HashMap<>();
+
+    /**
+     * Maps the ID of each part to the tooltip of its label, null if the part is healthy.
+     */
+    private final Map<String, String> partTooltips = new HashMap<>();
+
+    private AnatomyStatusService statusService;
+    private AnatomyLayoutRegistry layoutRegistry;
+    private AnatomyClock clock;
+
+    private EntityRef target = EntityRef.NULL;
+    private AnatomyLayout layout;
 
     @Override
     public void initialise() {
+        statusService = CoreRegistry.get(AnatomyStatusService.class);
+        layoutRegistry = CoreRegistry.get(AnatomyLayoutRegistry.class);
+        clock = CoreRegistry.get(AnatomyClock.class);
+
+        for (int step = 0; step <= GRADIENT_STEPS; step++) {
+            float healthFraction = (float) step / GRADIENT_STEPS;
+            gradientSkins[step] = new UISkinBuilder().setBaseSkin(redTextSkin)
+                    .setTextColor(new Color(1f - healthFraction, healthFraction, 0f, 1f)).build();
+        }
+        for (UILabel label : findAll(UILabel.class)) {
+            if (label.getId().startsWith(ANATOMY_PART_PREFIX)) {
+                String partID = label.getId().substring(ANATOMY_PART_PREFIX.length());
+                partLabels.put(partID, label);
+                label.setTooltipDelay(0);
+                label.bindTooltipString(new ReadOnlyBinding<String>() {
+                    @Override
+                    public String get() {
+                        return partTooltips.get(partID);
+                    }
+                });
+            }
+        }
     }
 
     @Override
     protected void initializeWithInteractionTarget(EntityRef interactionTarget) {
+        if (interactionTarget.hasComponent(AnatomyComponent.class)) {
+            setTarget(interactionTarget);
+        }
+    }
+
+    @Override
+    public void onOpened() {
+        EntityRef characterEntity = CoreRegistry.get(LocalPlayer.class).getCharacterEntity();
+        // In case the player hasn't been created yet, exit out early to prevent an error.
+        if (!characterEntity.hasComponent(CharacterComponent.class)) {
+            return;
+        }
+        super.onOpened();
+        statusService.addListener(this);
+        if (!target.exists()) {
+            setTarget(characterEntity);
+        } else {
+            refreshAllParts(null);
+        }
+    }
+
+    @Override
+    public void onClosed() {
+        super.onClosed();
+        statusService.removeListener(this);
+        target = EntityRef.NULL;
+        layout = null;
+    }
+
+    /**
+     * Shows the anatomy of an entity. Also called when the anatomy definition of the shown entity is reloaded, to pick up
+     * its new layout.
+     *
+     * @param entityRef The entity to inspect.
+     */
+    public void setTarget(EntityRef entityRef) {
+        target = entityRef;
+        AnatomyComponent anatomyComponent = entityRef.getComponent(AnatomyComponent.class);
+        layout = anatomyComponent != null ? layoutRegistry.getLayout(anatomyComponent) : null;
+        refreshAllParts(null);
     }
 
     /**
-     * Gets the player entity from the Core Registry.
+     * @return The entity whose anatomy is shown.
      */
-    private void reInit() {
-        player = CoreRegistry.get(LocalPlayer.class).getCharacterEntity();
+    public EntityRef getTarget() {
+        return target;
     }
 
     @Override
-    public void onOpened() {
-        EntityRef characterEntity = CoreRegistry.get(LocalPlayer.class).getCharacterEntity();
-        CharacterComponent characterComponent = characterEntity.getComponent(CharacterComponent.class);
+    public void onEffectChanged(EntityRef entityRef, String subsystem, int part, AnatomyEffect previousEffect, AnatomyEffect effect) {
+        if (entityRef.equals(target) && layout != null) {
+            refreshPart(part, null);
+        }
+    }
 
-        // In case the player has been created yet, exit out early to prevent an error.
-        if (characterComponent == null) {
+    /**
+     * Updates the labels of the changed parts of the shown entity.
+     *
+     * @param changedParts The indices of the changed parts.
+     */
+    public void refreshParts(BitSet changedParts) {
+        if (layout == null) {
             return;
         }
-
-        // If the reference to the player entity hasn't been set yet, or it refers to a NULL entity, call the reInit()
-        // method to set it. The getId() check is necessary for certain network entities whose ID is 0, but are
-        // erroneously marked as existent.
-        if (!player.exists() || (player.exists() && (player == EntityRef.NULL || player.getId() == 0 || player == null))) {
-            reInit();
+        for (int part = changedParts.nextSetBit(0); part >= 0 && part < layout.size(); part = changedParts.nextSetBit(part + 1)) {
+            refreshPart(part, null);
         }
+    }
 
-        // As long as there's an interaction target, open this window.
-        if (getInteractionTarget() != EntityRef.NULL) {
-            initializeWithInteractionTarget(getInteractionTarget());
-            super.onOpened();
+    /**
+     * Updates the labels of all the parts of the shown entity.
+     *
+     * @param removedSubsystem The name of a sub-system whose injury component is being removed, to be ignored, or null.
+     */
+    public void refreshAllParts(String removedSubsystem) {
+        for (UILabel label : partLabels.values()) {
+            label.setSkin(greenTextSkin);
+        }
+        partTooltips.clear();
+        if (layout == null) {
+            return;
+        }
+        for (int part = 0; part < layout.size(); part++) {
+            refreshPart(part, removedSubsystem);
         }
-
-        // Every time the character screen window is opened, update the Anatomy part statuses.
-        updateStatuses();
     }
 
-    private void updateStatuses() {
-        // Only update the statuses if the player character entity actually exists.
-        if (player == null || player == EntityRef.NULL || player.getId() == 0) {
+    private void refreshPart(int part, String removedSubsystem) {
+        String partID = layout.getPartId(part);
+        UILabel label = partLabels.get(partID);
+        if (label == null) {
             return;
         }
+        float healthFraction = getHealthFraction(part, removedSubsystem);
+        List<AnatomyEffect> partEffects = statusService.getEffects(target, part);
+        if (removedSubsystem != null) {
+            partEffects = new ArrayList<>(partEffects);
+            partEffects.removeIf(effect -> effect.getSubsystem().equals(removedSubsystem));
+        }
+        if (healthFraction >= 1f && partEffects.isEmpty()) {
+            label.setSkin(greenTextSkin);
+            partTooltips.remove(partID);
+        } else {
+            label.setSkin(gradientSkins[(int) (healthFraction * GRADIENT_STEPS)]);
+            String tooltip = "Health: " + (int) (healthFraction * 100) + "%";
+            for (AnatomyEffect effect : partEffects) {
+                tooltip += "\n" + effect.getDisplayName();
+            }
+            partTooltips.put(partID, tooltip);
+        }
+    }
 
-        AnatomyStatusGatheringEvent event = new AnatomyStatusGatheringEvent();
-        player.send(event);
-        Map<String, List<String>> partEffectsMap = event.getEffectsMap();
-
+    /**
+     * Returns the lowest health fraction of a part among the sub-systems. The health of the entities whose injury
+     * details aren't replicated to this client is estimated from their summary.
+     */
+    private float getHealthFraction(int part, String removedSubsystem) {
+        long gameTime = clock.getGameTimeInMs();
+        float healthFraction = 1f;
+        AnatomySummaryComponent summary = target.getComponent(AnatomySummaryComponent.class);
+        InjuredBoneComponent injuredBoneComponent = target.getComponent(InjuredBoneComponent.class);
+        if (injuredBoneComponent != null && !SkeletalHealthSystem.SKELETAL_SUBSYSTEM.equals(removedSubsystem)) {
+            healthFraction = Math.min(healthFraction, getHealthFraction(injuredBoneComponent.partHealths, part, gameTime,
+                    summary, SkeletalHealthSystem.SKELETAL_SUMMARY_SLOT, SkeletalSystem.SEVERITY_THRESHOLDS));
+        }
+        InjuredCirculatoryComponent injuredCirculatoryComponent = target.getComponent(InjuredCirculatoryComponent.class);
+        if (injuredCirculatoryComponent != null && !CirculatoryHealthSystem.CIRCULATORY_SUBSYSTEM.equals(removedSubsystem)) {
+            healthFraction = Math.min(healthFraction, getHealthFraction(injuredCirculatoryComponent.partHealths, part, gameTime,
+                    summary, CirculatoryHealthSystem.CIRCULATORY_SUMMARY_SLOT, CirculatorySystem.SEVERITY_THRESHOLDS));
+        }
+        return Math.max(0f, healthFraction);
+    }
 
-        Collection<UILabel> labels = findAll(UILabel.class);
-        for (UILabel label : labels) {
-            if (label.getId().contains(ANATOMY_PART_PREFIX)) {
-                String partID = label.getId().substring(ANATOMY_PART_PREFIX.length());
-                List<String> partEffects = partEffectsMap.get(partID);
-                if (partEffects == null) {
-                    // No effects for this part
-                    label.setSkin(greenTextSkin);
-                    label.bindTooltipString(new ReadOnlyBinding<String>() {
-                        @Override
-                        public String get() {
-                            return null;
-                        }
-                    });
-                } else {
-                    // This part has effects
-                    label.setSkin(redTextSkin);
-                    label.setTooltipDelay(0);
-                    label.bindTooltipString(new ReadOnlyBinding<String>() {
-                        @Override
-                        public String get() {
-                            return String.join(",", partEffects);
-                        }
-                    });
-                }
-            }
+    private float getHealthFraction(PartHealthTable partHealths, int part, long gameTime, AnatomySummaryComponent summary,
+                                    int slot, float[] thresholds) {
+        if (partHealths.size() == 0 && summary != null) {
+            // Only the summary is replicated, so the health is at most the threshold of the severity.
+            int severity = summary.getSeverity(part, slot);
+            return severity > 0 ? thresholds[severity - 1] : 1f;
+        }
+        if (part >= partHealths.size() || partHealths.maxHealth[part] <= 0) {
+            return 1f;
         }
+        return (float) partHealths.getHealth(part, gameTime) / partHealths.maxHealth[part];
     }
 }